@@ -0,0 +1,15 @@
+#!/bin/sh
+# Builds bridges.jar from src and records the class data sharing archive bridges.jsa from a Cli training run, see src/Cli.java
+# Usage: ./cds-archive.sh <class path of the JavaSMT and SMTInterpol jars>, for example ./cds-archive.sh "lib/*"
+# Run it again after every change to the sources or libraries, the JVM ignores an archive that does not match its class path
+set -e
+if [ $# -ne 1 ]; then
+    echo "Usage: $0 <library class path>"
+    exit 2
+fi
+rm -rf out/cds
+mkdir -p out/cds
+javac -encoding UTF-8 -d out/cds -cp "$1" src/*.java
+jar cf bridges.jar -C out/cds .
+java -XX:ArchiveClassesAtExit=bridges.jsa -cp "bridges.jar:$1" Cli train
+echo "Run with: java -XX:SharedArchiveFile=bridges.jsa -cp \"bridges.jar:$1\" Cli solve graph <puzzle ID>"
@@ -0,0 +1,40 @@
+import org.sosy_lab.java_smt.api.*;
+import java.math.BigInteger;
+import java.util.HashMap;
+
+// Interns the constants and atoms that the constraint families of a solver share, so each of them is created only once
+// Formulas made by the same context are equal when they represent the same term, so cached atoms stay valid across games
+public class AtomCache {
+    private final IntegerFormulaManager imgr;
+    private final HashMap<Integer, NumeralFormula.IntegerFormula> numbers;
+    private final HashMap<NumeralFormula.IntegerFormula, HashMap<Integer, BooleanFormula>> equalities; // variable == value
+    private final HashMap<NumeralFormula.IntegerFormula, BooleanFormula> positives; // variable > 0
+
+    public AtomCache(IntegerFormulaManager imgr) {
+        this.imgr = imgr;
+        this.numbers = new HashMap<>();
+        this.equalities = new HashMap<>();
+        this.positives = new HashMap<>();
+    }
+
+    public NumeralFormula.IntegerFormula number(int value) {
+        return this.numbers.computeIfAbsent(value, v -> this.imgr.makeNumber(v));
+    }
+
+    public NumeralFormula.IntegerFormula number(BigInteger value) {
+        return this.number(value.intValueExact());
+    }
+
+    public BooleanFormula equal(NumeralFormula.IntegerFormula variable, int value) {
+        return this.equalities.computeIfAbsent(variable, v -> new HashMap<>())
+                .computeIfAbsent(value, v -> this.imgr.equal(variable, this.number(v)));
+    }
+
+    public BooleanFormula equal(NumeralFormula.IntegerFormula variable, BigInteger value) {
+        return this.equal(variable, value.intValueExact());
+    }
+
+    public BooleanFormula positive(NumeralFormula.IntegerFormula variable) {
+        return this.positives.computeIfAbsent(variable, v -> this.imgr.greaterThan(v, this.number(0)));
+    }
+}
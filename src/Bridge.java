@@ -38,6 +38,16 @@ public class Bridge implements Serializable {
         return this.direction;
     }
 
+    // Returns whether this bridge and the other one cross each other, which is only possible for a horizontal and a vertical bridge
+    public boolean crosses(Bridge other) {
+        if (this.direction == other.getDirection())
+            return false;
+        Bridge horizontal = this.direction == Direction.HORIZONTAL ? this : other;
+        Bridge vertical = this.direction == Direction.HORIZONTAL ? other : this;
+        return vertical.getA().getCol() > horizontal.getA().getCol() && vertical.getA().getCol() < horizontal.getB().getCol() // Column lies strictly in between
+                && vertical.getA().getRow() < horizontal.getA().getRow() && vertical.getB().getRow() > horizontal.getA().getRow(); // Row lies strictly in between
+    }
+
     public String toString() {
         if (this.weight.intValue() == 1) {
             if (this.direction == Direction.HORIZONTAL)
@@ -0,0 +1,124 @@
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+// Command line entry point for short-lived batch jobs. A solver (and its SMT context) is only created for the encoding that is used
+//      Cli solve <graph|grid> <puzzle ID>...   Solves and prints the given puzzles
+//      Cli file <graph|grid> <file>            Solves every puzzle ID in the file, one per line
+//      Cli train                               Solves a few small puzzles with both encodings, to record a class data sharing archive
+//
+// Most of the start up time goes to loading and linking the JavaSMT and SMTInterpol classes. A dynamic AppCDS archive recorded
+// from the train mode lets later runs map those classes in directly. cds-archive.sh packages the classes (the class path may
+// only contain jars) and records the archive, run it again after every build:
+//      ./cds-archive.sh "<library jars>"
+//      java -XX:SharedArchiveFile=bridges.jsa -cp "bridges.jar:<library jars>" Cli solve graph 7x7m2:4d2b1b4a26b3m1c3c3c2d3
+public class Cli {
+    private static final String USAGE = "Usage: Cli solve <graph|grid> <puzzle ID>... | Cli file <graph|grid> <file> | Cli train";
+    private static final String[] TRAINING_PUZZLES = {
+            "3x3m2:2a2c2a2",
+            "7x7m2:4d2b1b4a26b3m1c3c3c2d3",
+            "7x7m2:a4d32a4b3b3g4a2c2c3g13d2a"
+    };
+
+    private GraphSolver graphSolver;
+    private GridSolver gridSolver;
+
+    public static void main(String[] args) throws InvalidConfigurationException {
+        if (args.length == 0 || !hasOperands(args))
+            usage();
+        Cli cli = new Cli();
+        switch (args[0]) {
+            case "solve" -> {
+                for (int i = 2; i < args.length; i++) {
+                    cli.solve(args[1], args[i], true);
+                }
+            }
+            case "file" -> {
+                for (String id : readPuzzles(args[2])) {
+                    cli.solve(args[1], id, true);
+                }
+            }
+            case "train" -> {
+                for (String id : TRAINING_PUZZLES) {
+                    cli.solve("graph", id, false);
+                    cli.solve("grid", id, false);
+                }
+            }
+            default -> usage();
+        }
+    }
+
+    // Checks the amount of operands of the command and the encoding, an unknown command is left to the switch
+    private static boolean hasOperands(String[] args) {
+        return switch (args[0]) {
+            case "solve" -> args.length >= 3 && isEncoding(args[1]);
+            case "file" -> args.length == 3 && isEncoding(args[1]);
+            case "train" -> args.length == 1;
+            default -> true;
+        };
+    }
+
+    private static boolean isEncoding(String encoding) {
+        return encoding.equals("graph") || encoding.equals("grid");
+    }
+
+    private static void usage() {
+        System.out.println(USAGE);
+        System.exit(2);
+    }
+
+    private void solve(String encoding, String id, boolean print) throws InvalidConfigurationException {
+        Game game = new Game(id);
+        ArrayList<Long> times;
+        SolveResult result;
+        switch (encoding) {
+            case "graph" -> {
+                times = this.graphSolver().solveGame(game);
+                result = this.graphSolver().getLastResult();
+            }
+            case "grid" -> {
+                times = this.gridSolver().solveGame(game);
+                result = this.gridSolver().getLastResult();
+            }
+            default -> throw new RuntimeException("Unknown encoding " + encoding); // Checked by main already
+        }
+
+        if (print) {
+            System.out.println(id);
+            if (result == SolveResult.SOLVED)
+                System.out.println(game);
+            else System.out.println(result);
+            System.out.println(times);
+        }
+    }
+
+    private GraphSolver graphSolver() throws InvalidConfigurationException {
+        if (this.graphSolver == null)
+            this.graphSolver = new GraphSolver();
+        return this.graphSolver;
+    }
+
+    private GridSolver gridSolver() throws InvalidConfigurationException {
+        if (this.gridSolver == null)
+            this.gridSolver = new GridSolver();
+        return this.gridSolver;
+    }
+
+    private static ArrayList<String> readPuzzles(String filename) {
+        ArrayList<String> puzzles = new ArrayList<>();
+        try {
+            Scanner scanner = new Scanner(new File(filename));
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (!line.isEmpty())
+                    puzzles.add(line);
+            }
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        return puzzles;
+    }
+}
@@ -0,0 +1,118 @@
+import org.sosy_lab.java_smt.api.*;
+import org.sosy_lab.java_smt.api.visitors.DefaultFormulaVisitor;
+import org.sosy_lab.java_smt.api.visitors.TraversalProcess;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+// Collects the constraint families built for one puzzle, together with their construction time
+// Sizes are only computed when the report is printed, so collecting does not distort the constraint timings
+// A family the solver took from a cache (GraphSolver's layout templates) was not built for this puzzle, its time is only the
+// lookup. The source column says so: built, template (whole family reused) or partly (built on reused subformulas)
+public class ConstraintReport {
+    private static final EnumSet<FunctionDeclarationKind> CONNECTIVES = EnumSet.of(
+            FunctionDeclarationKind.AND,
+            FunctionDeclarationKind.OR,
+            FunctionDeclarationKind.NOT,
+            FunctionDeclarationKind.IFF,
+            FunctionDeclarationKind.IMPLIES,
+            FunctionDeclarationKind.XOR,
+            FunctionDeclarationKind.ITE
+    );
+
+    private final FormulaManager fmgr;
+    private final String title;
+    private final ArrayList<String> families;
+    private final ArrayList<BooleanFormula> formulas;
+    private final ArrayList<Long> buildTimes; // In nanoseconds
+    private final ArrayList<String> sources;
+
+    public ConstraintReport(FormulaManager fmgr, String title) {
+        this.fmgr = fmgr;
+        this.title = title;
+        this.families = new ArrayList<>();
+        this.formulas = new ArrayList<>();
+        this.buildTimes = new ArrayList<>();
+        this.sources = new ArrayList<>();
+    }
+
+    public void add(String family, BooleanFormula formula, long buildTime) {
+        this.add(family, formula, buildTime, "built");
+    }
+
+    public void add(String family, BooleanFormula formula, long buildTime, String source) {
+        this.families.add(family);
+        this.formulas.add(formula);
+        this.buildTimes.add(buildTime);
+        this.sources.add(source);
+    }
+
+    public ArrayList<String> getFamilies() {
+        return this.families;
+    }
+
+    public long getBuildTime(String family) {
+        return this.buildTimes.get(this.families.indexOf(family));
+    }
+
+    public String getSource(String family) {
+        return this.sources.get(this.families.indexOf(family));
+    }
+
+    public int getVariableCount(String family) {
+        return this.fmgr.extractVariables(this.formulas.get(this.families.indexOf(family))).size();
+    }
+
+    // Returns {atoms, DAG nodes} of a family, every shared subformula is counted once
+    public int[] getSizes(String family) {
+        return this.countSizes(this.formulas.get(this.families.indexOf(family)));
+    }
+
+    private int[] countSizes(BooleanFormula formula) {
+        int[] sizes = new int[2]; // {atoms, DAG nodes}
+        this.fmgr.visitRecursively(formula, new DefaultFormulaVisitor<>() {
+            @Override
+            protected TraversalProcess visitDefault(Formula f) {
+                sizes[1]++;
+                return TraversalProcess.CONTINUE;
+            }
+
+            @Override
+            public TraversalProcess visitFreeVariable(Formula f, String name) {
+                if (fmgr.getFormulaType(f).isBooleanType()) // Boolean variables (γ) are atoms themselves
+                    sizes[0]++;
+                return this.visitDefault(f);
+            }
+
+            @Override
+            public TraversalProcess visitFunction(Formula f, List<Formula> args, FunctionDeclaration<?> decl) {
+                if (decl.getType().isBooleanType() && !CONNECTIVES.contains(decl.getKind())) // Theory predicates such as =, <, <=
+                    sizes[0]++;
+                return this.visitDefault(f);
+            }
+        });
+        return sizes;
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(this.title).append("\n");
+        s.append(String.format("%-30s%12s%12s%12s%14s%10s%n", "Constraint", "Variables", "Atoms", "DAG nodes", "Build (ms)", "Source"));
+
+        long totalTime = 0;
+        for (int i = 0; i < this.families.size(); i++) {
+            int[] sizes = this.countSizes(this.formulas.get(i));
+            int variables = this.fmgr.extractVariables(this.formulas.get(i)).size();
+            s.append(String.format("%-30s%12d%12d%12d%14.3f%10s%n",
+                    this.families.get(i), variables, sizes[0], sizes[1], this.buildTimes.get(i) / 1e6, this.sources.get(i)));
+            totalTime += this.buildTimes.get(i);
+        }
+
+        // Families share variables and subformulas, so the total is measured on the conjunction instead of summed
+        BooleanFormula all = this.fmgr.getBooleanFormulaManager().and(this.formulas);
+        int[] sizes = this.countSizes(all);
+        s.append(String.format("%-30s%12d%12d%12d%14.3f%n",
+                "Total", this.fmgr.extractVariables(all).size(), sizes[0], sizes[1], totalTime / 1e6));
+        return s.toString();
+    }
+}
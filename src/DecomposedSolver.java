@@ -0,0 +1,398 @@
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Solves a game by splitting it at cut bridges of the possible-bridge graph and solving every part with its own GraphSolver
+// A cut bridge must exist in every solution (weight 1 or 2), otherwise the two sides would not be connected. The parts form a
+// tree, which is solved from the leaves up: every part is solved under the weights of its cut bridges (the interface) that its
+// children allow, in parallel with the other parts of the same height. Parts that are connected by crossing bridges are never split.
+public class DecomposedSolver {
+    private static final int MAX_INTERFACE = 8; // Parts with more cut bridges are merged with their neighbors, 2^8 subproblems at most
+
+    private final ExecutorService executor;
+    private final ThreadLocal<GraphSolver> solvers; // SolverContexts are not thread safe, so every worker gets its own
+    private final ArrayList<GraphSolver> created = new ArrayList<>(); // Every worker's solver, to close them
+    private SolveResult lastResult;
+
+    public DecomposedSolver(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "decomposed-solver-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.solvers = ThreadLocal.withInitial(() -> {
+            try {
+                GraphSolver solver = new GraphSolver();
+                synchronized (this.created) {
+                    this.created.add(solver);
+                }
+                return solver;
+            } catch (InvalidConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    // Outcome of the last solveGame call, the game is only filled in if it was SOLVED
+    public SolveResult getLastResult() {
+        return this.lastResult;
+    }
+
+    // Stops the workers and closes their solvers, the DecomposedSolver cannot be used anymore afterwards
+    public void close() {
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this.created) {
+            for (GraphSolver solver : this.created) {
+                solver.close();
+            }
+            this.created.clear();
+        }
+    }
+
+    public ArrayList<Long> solveGame(Game game) {
+        ArrayList<Long> times = new ArrayList<>();
+        long t0 = System.currentTimeMillis();
+
+        ArrayList<Node> nodes = game.getNodes();
+        ArrayList<Bridge> bridges = game.getBridges();
+        HashMap<Integer, Integer> indexOf = new HashMap<>(); // Maps row * fieldSize + col to the index in game.nodes
+        for (int i = 0; i < nodes.size(); i++) {
+            indexOf.put(nodes.get(i).getRow() * game.getFieldSize() + nodes.get(i).getCol(), i);
+        }
+        int[] endA = new int[bridges.size()];
+        int[] endB = new int[bridges.size()];
+        for (int e = 0; e < bridges.size(); e++) {
+            endA[e] = indexOf.get(bridges.get(e).getA().getRow() * game.getFieldSize() + bridges.get(e).getA().getCol());
+            endB[e] = indexOf.get(bridges.get(e).getB().getRow() * game.getFieldSize() + bridges.get(e).getB().getCol());
+        }
+
+        // Decomposition: every node starts out as its own part, parts are merged until only cut bridges run between them
+        int[] part = this.findParts(nodes.size(), bridges, endA, endB);
+        ArrayList<Integer> partIds = new ArrayList<>();
+        for (int n = 0; n < nodes.size(); n++) {
+            if (part[n] == n)
+                partIds.add(n);
+        }
+        HashMap<Integer, ArrayList<Integer>> partNodes = new HashMap<>();
+        HashMap<Integer, ArrayList<Integer>> partBridges = new HashMap<>(); // Bridges inside a part
+        HashMap<Integer, ArrayList<Integer>> partInterface = new HashMap<>(); // Cut bridges leaving a part
+        for (int p : partIds) {
+            partNodes.put(p, new ArrayList<>());
+            partBridges.put(p, new ArrayList<>());
+            partInterface.put(p, new ArrayList<>());
+        }
+        for (int n = 0; n < nodes.size(); n++) {
+            partNodes.get(part[n]).add(n);
+        }
+        for (int e = 0; e < bridges.size(); e++) {
+            if (part[endA[e]] == part[endB[e]]) {
+                partBridges.get(part[endA[e]]).add(e);
+            } else {
+                partInterface.get(part[endA[e]]).add(e);
+                partInterface.get(part[endB[e]]).add(e);
+            }
+        }
+
+        // Order the parts breadth-first from the part of node 0, remembering which cut bridge leads to the parent
+        HashMap<Integer, Integer> parentBridge = new HashMap<>();
+        ArrayList<Integer> order = new ArrayList<>();
+        parentBridge.put(part[0], -1);
+        order.add(part[0]);
+        for (int i = 0; i < order.size(); i++) {
+            for (int e : partInterface.get(order.get(i))) {
+                int other = this.otherPart(part, endA, endB, e, order.get(i));
+                if (!parentBridge.containsKey(other)) {
+                    parentBridge.put(other, e);
+                    order.add(other);
+                }
+            }
+        }
+        if (order.size() < partIds.size()) // Possible-bridge graph is not connected, game is left as it was
+            return this.unsolvable(times, t0);
+        HashMap<Integer, Integer> height = new HashMap<>(); // Leaves have height 0
+        int maxHeight = 0;
+        for (int i = order.size()-1; i >= 0; i--) {
+            int p = order.get(i);
+            height.putIfAbsent(p, 0);
+            maxHeight = Math.max(maxHeight, height.get(p));
+            if (parentBridge.get(p) != -1) {
+                int parent = this.otherPart(part, endA, endB, parentBridge.get(p), p);
+                height.put(parent, Math.max(height.getOrDefault(parent, 0), height.get(p) + 1));
+            }
+        }
+        times.add(System.currentTimeMillis() - t0); // Time it takes to decompose
+
+        // Solve the parts bottom-up, all parts of the same height in parallel. A part is only solved under interface
+        // combinations its children can agree with, so the choice left for the parent bridge is what the whole subtree allows
+        long t1 = System.currentTimeMillis();
+        HashMap<Integer, Integer[]> choice = new HashMap<>(); // Part -> {combination if parent bridge is single, if double}
+        HashMap<Integer, HashMap<Integer, ArrayList<BigInteger>>> solutions = new HashMap<>(); // Part -> combination -> bridge weights
+        for (int h = 0; h <= maxHeight; h++) {
+            HashMap<Integer, HashMap<Integer, Future<ArrayList<BigInteger>>>> futures = new HashMap<>();
+            for (int p : order) {
+                if (height.get(p) != h)
+                    continue;
+                choice.put(p, new Integer[2]);
+                solutions.put(p, new HashMap<>());
+                futures.put(p, new HashMap<>());
+                ArrayList<Integer> bridgesOut = partInterface.get(p);
+                for (int combination = 0; combination < (1 << bridgesOut.size()); combination++) {
+                    if (!this.childrenAgree(p, combination, bridgesOut, parentBridge, choice, part, endA, endB))
+                        continue;
+                    Game subgame = this.createSubgame(game, combination, partNodes.get(p), partBridges.get(p), bridgesOut, endA, endB);
+                    if (subgame == null) // Interface weights alone already exceed a node value
+                        continue;
+                    if (subgame.getBridges().isEmpty()) { // Nothing left to solve, only a node value of 0 remains
+                        if (subgame.getNodes().size() == 1 && subgame.getNodes().get(0).getValue() == 0)
+                            this.accept(p, combination, new ArrayList<>(), bridgesOut, parentBridge, choice, solutions);
+                        continue;
+                    }
+                    futures.get(p).put(combination, this.executor.submit(() -> this.solvers.get().findSolution(subgame)));
+                }
+            }
+            try {
+                for (int p : futures.keySet()) {
+                    for (Map.Entry<Integer, Future<ArrayList<BigInteger>>> entry : futures.get(p).entrySet()) {
+                        ArrayList<BigInteger> solution = entry.getValue().get();
+                        if (solution != null)
+                            this.accept(p, entry.getKey(), solution, partInterface.get(p), parentBridge, choice, solutions);
+                    }
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        times.add(System.currentTimeMillis() - t1); // Time it takes to solve all subproblems
+
+        // Combine: follow the choices top-down from the root part and collect the weights of all bridges
+        long t2 = System.currentTimeMillis();
+        BigInteger[] weights = new BigInteger[bridges.size()];
+        HashMap<Integer, Integer> parentBit = new HashMap<>();
+        parentBit.put(part[0], 0); // The root part has no parent bridge, so its choice is stored in slot 0
+        for (int p : order) {
+            Integer combination = choice.get(p)[parentBit.get(p)];
+            if (combination == null) // No combination works for the root part, game is left as it was
+                return this.unsolvable(times, t0);
+            ArrayList<Integer> bridgesOut = partInterface.get(p);
+            for (int j = 0; j < bridgesOut.size(); j++) {
+                int e = bridgesOut.get(j);
+                int bit = (combination >> j) & 1;
+                weights[e] = BigInteger.valueOf(1 + bit);
+                if (e != parentBridge.get(p))
+                    parentBit.put(this.otherPart(part, endA, endB, e, p), bit);
+            }
+            ArrayList<BigInteger> solution = solutions.get(p).get(combination);
+            for (int j = 0; j < partBridges.get(p).size(); j++) {
+                weights[partBridges.get(p).get(j)] = solution.get(j);
+            }
+        }
+        game.setBridgeWeights(new ArrayList<>(Arrays.asList(weights)));
+        game.fillFieldGraphEncoding();
+        times.add(System.currentTimeMillis() - t2); // Time it takes to combine the solutions of all parts
+
+        times.add(System.currentTimeMillis() - t0); // Total time
+        this.lastResult = SolveResult.SOLVED;
+        return times;
+    }
+
+    // Ends a solveGame call for an unsolvable game, with the total time as last entry like a solved one
+    private ArrayList<Long> unsolvable(ArrayList<Long> times, long t0) {
+        times.add(System.currentTimeMillis() - t0);
+        this.lastResult = SolveResult.UNSOLVABLE;
+        return times;
+    }
+
+    // Returns whether the weights a combination gives to the bridges towards the children of a part are possible in their subtrees
+    private boolean childrenAgree(int p, int combination, ArrayList<Integer> bridgesOut, HashMap<Integer, Integer> parentBridge,
+                                  HashMap<Integer, Integer[]> choice, int[] part, int[] endA, int[] endB) {
+        for (int j = 0; j < bridgesOut.size(); j++) {
+            int e = bridgesOut.get(j);
+            if (e != parentBridge.get(p) && choice.get(this.otherPart(part, endA, endB, e, p))[(combination >> j) & 1] == null)
+                return false;
+        }
+        return true;
+    }
+
+    // Remembers a solvable combination of a part under the weight it gives to the bridge towards the parent
+    private void accept(int p, int combination, ArrayList<BigInteger> solution, ArrayList<Integer> bridgesOut, HashMap<Integer, Integer> parentBridge,
+                        HashMap<Integer, Integer[]> choice, HashMap<Integer, HashMap<Integer, ArrayList<BigInteger>>> solutions) {
+        int parentBit = bridgesOut.contains(parentBridge.get(p)) ? (combination >> bridgesOut.indexOf(parentBridge.get(p))) & 1 : 0;
+        if (choice.get(p)[parentBit] == null) {
+            choice.get(p)[parentBit] = combination;
+            solutions.get(p).put(combination, solution);
+        }
+    }
+
+    // Returns the part on the other side of cut bridge e
+    private int otherPart(int[] part, int[] endA, int[] endB, int e, int p) {
+        return part[endA[e]] == p ? part[endB[e]] : part[endA[e]];
+    }
+
+    // Returns for every node the representative of the part it belongs to
+    private int[] findParts(int nodeCount, ArrayList<Bridge> bridges, int[] endA, int[] endB) {
+        int[] parent = new int[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            parent[n] = n;
+        }
+
+        // Non-cut bridges keep their endpoints together, and so does every bridge involved in a crossing
+        boolean[] isCut = this.findCutBridges(nodeCount, endA, endB);
+        for (int e = 0; e < bridges.size(); e++) {
+            if (!isCut[e])
+                this.union(parent, endA[e], endB[e]);
+            for (int f = e+1; f < bridges.size(); f++) {
+                if (bridges.get(e).crosses(bridges.get(f))) {
+                    this.union(parent, endA[e], endB[e]);
+                    this.union(parent, endA[e], endA[f]);
+                    this.union(parent, endA[f], endB[f]);
+                }
+            }
+        }
+
+        // Merging by crossings can make the parts form a cycle, in which case the cut bridges on it are not cut bridges anymore
+        // Parts with too many cut bridges are merged with their neighbors to bound the amount of subproblems
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] tree = new int[nodeCount]; // Union-find over parts, connected by cut bridges
+            int[] interfaceSize = new int[nodeCount];
+            for (int n = 0; n < nodeCount; n++) {
+                tree[n] = n;
+            }
+            for (int e = 0; e < bridges.size(); e++) {
+                int a = this.find(parent, endA[e]);
+                int b = this.find(parent, endB[e]);
+                if (a == b)
+                    continue;
+                interfaceSize[a]++;
+                interfaceSize[b]++;
+                if (this.find(tree, a) == this.find(tree, b)) { // Cycle of parts
+                    this.union(parent, a, b);
+                    changed = true;
+                } else this.union(tree, a, b);
+            }
+            if (changed)
+                continue;
+            for (int e = 0; e < bridges.size(); e++) {
+                int a = this.find(parent, endA[e]);
+                int b = this.find(parent, endB[e]);
+                if (a != b && (interfaceSize[a] > MAX_INTERFACE || interfaceSize[b] > MAX_INTERFACE)) {
+                    this.union(parent, a, b);
+                    changed = true;
+                }
+            }
+        }
+
+        int[] part = new int[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            part[n] = this.find(parent, n);
+        }
+        // Use the smallest node index of a part as its representative
+        int[] smallest = new int[nodeCount];
+        Arrays.fill(smallest, Integer.MAX_VALUE);
+        for (int n = 0; n < nodeCount; n++) {
+            smallest[part[n]] = Math.min(smallest[part[n]], n);
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            part[n] = smallest[part[n]];
+        }
+        return part;
+    }
+
+    // Finds the bridges of the possible-bridge graph whose removal disconnects it (Tarjan's bridge-finding algorithm)
+    private boolean[] findCutBridges(int nodeCount, int[] endA, int[] endB) {
+        ArrayList<ArrayList<Integer>> incident = new ArrayList<>(); // Bridge indices per node
+        for (int n = 0; n < nodeCount; n++) {
+            incident.add(new ArrayList<>());
+        }
+        for (int e = 0; e < endA.length; e++) {
+            incident.get(endA[e]).add(e);
+            incident.get(endB[e]).add(e);
+        }
+
+        boolean[] isCut = new boolean[endA.length];
+        int[] discovered = new int[nodeCount];
+        int[] low = new int[nodeCount];
+        Arrays.fill(discovered, -1);
+        int time = 0;
+        for (int start = 0; start < nodeCount; start++) {
+            if (discovered[start] != -1)
+                continue;
+            // Iterative depth-first search, a frame is {node, bridge used to get there, position in incident list}
+            ArrayDeque<int[]> stack = new ArrayDeque<>();
+            discovered[start] = low[start] = time++;
+            stack.push(new int[]{start, -1, 0});
+            while (!stack.isEmpty()) {
+                int[] frame = stack.peek();
+                int n = frame[0];
+                if (frame[2] < incident.get(n).size()) {
+                    int e = incident.get(n).get(frame[2]++);
+                    if (e == frame[1])
+                        continue;
+                    int next = endA[e] == n ? endB[e] : endA[e];
+                    if (discovered[next] == -1) {
+                        discovered[next] = low[next] = time++;
+                        stack.push(new int[]{next, e, 0});
+                    } else low[n] = Math.min(low[n], discovered[next]);
+                } else {
+                    stack.pop();
+                    if (frame[1] != -1) {
+                        int from = endA[frame[1]] == n ? endB[frame[1]] : endA[frame[1]];
+                        low[from] = Math.min(low[from], low[n]);
+                        if (low[n] > discovered[from])
+                            isCut[frame[1]] = true;
+                    }
+                }
+            }
+        }
+        return isCut;
+    }
+
+    // Creates the game of one part, with node values lowered by the interface weights of the given combination
+    // Bit i of the combination is 0 for a single and 1 for a double i-th cut bridge. Returns null if a node value becomes negative
+    private Game createSubgame(Game game, int combination, ArrayList<Integer> nodeIndices, ArrayList<Integer> bridgeIndices,
+                               ArrayList<Integer> interfaceIndices, int[] endA, int[] endB) {
+        HashMap<Integer, Node> copies = new HashMap<>(); // Node index in game -> copy in subgame
+        ArrayList<Node> nodes = new ArrayList<>();
+        for (int n : nodeIndices) {
+            Node original = game.getNodes().get(n);
+            Node copy = new Node(original.getRow(), original.getCol(), original.getValue());
+            copies.put(n, copy);
+            nodes.add(copy);
+        }
+        for (int i = 0; i < interfaceIndices.size(); i++) {
+            int e = interfaceIndices.get(i);
+            int weight = 1 + ((combination >> i) & 1);
+            Node copy = copies.containsKey(endA[e]) ? copies.get(endA[e]) : copies.get(endB[e]);
+            copy.setValue(copy.getValue() - weight);
+            if (copy.getValue() < 0)
+                return null;
+        }
+        ArrayList<Bridge> bridges = new ArrayList<>();
+        for (int e : bridgeIndices) {
+            Bridge original = game.getBridges().get(e);
+            bridges.add(new Bridge(copies.get(endA[e]), copies.get(endB[e]), null, original.getDirection()));
+        }
+        return new Game(game.getFieldSize(), nodes, bridges);
+    }
+
+    private int find(int[] parent, int n) {
+        while (parent[n] != n) {
+            parent[n] = parent[parent[n]];
+            n = parent[n];
+        }
+        return n;
+    }
+
+    private void union(int[] parent, int a, int b) {
+        parent[this.find(parent, a)] = this.find(parent, b);
+    }
+}
@@ -0,0 +1,149 @@
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+// Chooses between the graph and the grid encoding per puzzle, so only the one expected to be faster has to run
+// A logistic regression over cheap features of the game predicts the probability that the graph encoding is faster
+// It is trained on timing files written by Main ("Graph:" and "Grid:" lines after each puzzle ID) and can keep learning
+// from new timings through update()
+public class EncodingRouter {
+    private static final int FEATURES = 14; // Bias, 4 size features, crossing density, 8 value frequencies
+    private static final double LEARNING_RATE = 0.05;
+    private static final int EPOCHS = 200;
+
+    private final double[] weights;
+    private GraphSolver graphSolver;
+    private GridSolver gridSolver;
+    private String lastEncoding;
+
+    public EncodingRouter() {
+        this.weights = new double[FEATURES];
+    }
+
+    // Features are computed from the node and possible-bridge lists only, which is linear apart from the crossing count
+    public static double[] features(Game game) {
+        double[] x = new double[FEATURES];
+        int nodes = game.getNodes().size();
+        int bridges = game.getBridges().size();
+
+        int crossings = 0;
+        for (int i = 0; i < bridges; i++) {
+            for (int j = i + 1; j < bridges; j++) {
+                if (game.getBridges().get(i).crosses(game.getBridges().get(j)))
+                    crossings++;
+            }
+        }
+
+        x[0] = 1; // Bias
+        x[1] = Math.log(game.getFieldSize());
+        x[2] = Math.log(1 + nodes);
+        x[3] = Math.log(1 + bridges);
+        x[4] = nodes / (double) (game.getFieldSize() * game.getFieldSize()); // Node density
+        x[5] = bridges == 0 ? 0 : crossings / (double) bridges;
+        for (Node n : game.getNodes()) { // Value histogram, as fractions of all nodes
+            if (n.getValue() >= 1 && n.getValue() <= 8)
+                x[5 + n.getValue()] += 1.0 / nodes;
+        }
+        return x;
+    }
+
+    // Probability that the graph encoding solves the game faster than the grid encoding
+    public double graphProbability(Game game) {
+        return sigmoid(dot(this.weights, features(game)));
+    }
+
+    public String predict(Game game) {
+        return this.graphProbability(game) >= 0.5 ? "Graph" : "Grid";
+    }
+
+    // One stochastic gradient step for a game whose solving times with both encodings are known
+    // Clear wins count more than near ties, by the log ratio of the times
+    public void update(Game game, long graphMillis, long gridMillis) {
+        this.step(features(game), graphMillis, gridMillis);
+    }
+
+    // Trains on all puzzles in a timing file, several passes over the data starting from the current weights
+    public void train(String filename) {
+        ArrayList<double[]> samples = new ArrayList<>();
+        ArrayList<long[]> times = new ArrayList<>(); // {graph, grid}
+        try {
+            Scanner scanner = new Scanner(new File(filename));
+            String id = null;
+            long graph = -1;
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (line.startsWith("Graph:")) {
+                    graph = totalTime(line);
+                } else if (line.startsWith("Grid:")) {
+                    if (id != null && graph >= 0) {
+                        samples.add(features(new Game(id)));
+                        times.add(new long[]{graph, totalTime(line)});
+                    }
+                    graph = -1;
+                } else if (line.contains("m2:")) {
+                    id = line.trim();
+                }
+            }
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (int epoch = 0; epoch < EPOCHS; epoch++) {
+            for (int i = 0; i < samples.size(); i++) {
+                this.step(samples.get(i), times.get(i)[0], times.get(i)[1]);
+            }
+        }
+    }
+
+    // Solves the game with the predicted encoding, the solvers are created on first use
+    public ArrayList<Long> solveGame(Game game) throws InvalidConfigurationException {
+        this.lastEncoding = this.predict(game);
+        if (this.lastEncoding.equals("Graph")) {
+            if (this.graphSolver == null)
+                this.graphSolver = new GraphSolver();
+            return this.graphSolver.solveGame(game);
+        }
+        if (this.gridSolver == null)
+            this.gridSolver = new GridSolver();
+        return this.gridSolver.solveGame(game);
+    }
+
+    // Encoding used by the last solveGame call, "Graph" or "Grid"
+    public String getLastEncoding() {
+        return this.lastEncoding;
+    }
+
+    public double[] getWeights() {
+        return this.weights.clone();
+    }
+
+    private void step(double[] x, long graphMillis, long gridMillis) {
+        double label = graphMillis <= gridMillis ? 1 : 0;
+        double importance = Math.abs(Math.log((1.0 + graphMillis) / (1.0 + gridMillis)));
+        double error = sigmoid(dot(this.weights, x)) - label;
+        for (int i = 0; i < FEATURES; i++) {
+            this.weights[i] -= LEARNING_RATE * importance * error * x[i];
+        }
+    }
+
+    // Wall time of a timing line, "Graph:\tconstruction\tunsat\tsat\ttotal" where total covers checking and the model
+    private static long totalTime(String line) {
+        String[] parts = line.split("\t");
+        return Long.parseLong(parts[1].trim()) + Long.parseLong(parts[parts.length - 1].trim());
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double sigmoid(double z) {
+        return 1 / (1 + Math.exp(-z));
+    }
+}
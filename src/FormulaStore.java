@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Directory of SMT-LIB2 formulas, one file per puzzle and encoding, named after the SHA-256 hash of both
+// The variant names the encoding including everything the formula depends on (like the root and depth of the γ ladder)
+// The files are plain SMT-LIB2 (declarations and one assert), so they can be given to other solvers as well for comparisons
+public class FormulaStore {
+    private final Path directory;
+
+    public FormulaStore(String directory) {
+        this.directory = Path.of(directory);
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Returns the stored formula, or null if there is none yet
+    public String load(String id, String variant) {
+        Path path = this.pathOf(id, variant);
+        if (!Files.exists(path))
+            return null;
+        try {
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Written to a temporary file first, so readers never see half a formula
+    public void store(String id, String variant, String formula) {
+        Path path = this.pathOf(id, variant);
+        try {
+            Path temporary = Files.createTempFile(this.directory, "formula", ".tmp");
+            Files.writeString(temporary, formula, StandardCharsets.UTF_8);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Path pathOf(String id, String variant) {
+        return this.directory.resolve(key(id, variant) + ".smt2");
+    }
+
+    public static String key(String id, String variant) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest((id + "\n" + variant).getBytes(StandardCharsets.UTF_8));
+            StringBuilder s = new StringBuilder();
+            for (byte b : hash) {
+                s.append(String.format("%02x", b));
+            }
+            return s.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -7,6 +7,8 @@ public class Game implements Serializable {
     private char[][] field;
     private final ArrayList<Node> nodes;
     private final ArrayList<Bridge> bridges;
+    private String id; // Puzzle ID the game was parsed from, null for games built from lists
+    private transient int[] nodeIndex; // Index in this.nodes per cell (row * fieldSize + col), -1 for empty cells. Built lazily
 
     public Game(int fieldSize, ArrayList<Node> nodes, ArrayList<Bridge> bridges) { // For creating game from node and bridge lists
         this.fieldSize = fieldSize;
@@ -16,6 +18,7 @@ public class Game implements Serializable {
     }
 
     public Game(String id) { // For creating game from GameID strings
+        this.id = id;
         this.nodes = parseID(id);
         this.bridges = new ArrayList<>();
         this.setPossibleBridges(); // Determine all possible bridges
@@ -23,6 +26,7 @@ public class Game implements Serializable {
     }
 
     public Game(Game other) { // Copy constructor
+        this.id = other.getId();
         this.fieldSize = other.getFieldSize();
         this.field = new char[this.fieldSize][this.fieldSize];
 
@@ -112,6 +116,10 @@ public class Game implements Serializable {
         return this.fieldSize;
     }
 
+    public String getId() {
+        return this.id;
+    }
+
     public char[][] getField() {
         return field;
     }
@@ -126,6 +134,7 @@ public class Game implements Serializable {
 
     public void addNode(Node node) {
         this.nodes.add(node);
+        this.nodeIndex = null;
     }
 
     public void addBridge(Bridge bridge) {
@@ -138,6 +147,26 @@ public class Game implements Serializable {
 
     public void sortNodes() {
         this.nodes.sort(Comparator.comparingInt(Node::getRow).thenComparingInt(Node::getCol));
+        this.nodeIndex = null;
+    }
+
+    // Returns the index in the nodes list of the node at the given cell, or -1 if there is none (or the cell is outside the field)
+    // The lookup table is built in one pass over the nodes and rebuilt after addNode() or sortNodes()
+    public int getNodeIndexAt(int row, int col) {
+        if (row < 0 || col < 0 || row >= this.fieldSize || col >= this.fieldSize)
+            return -1;
+        if (this.nodeIndex == null) {
+            this.nodeIndex = new int[this.fieldSize * this.fieldSize];
+            Arrays.fill(this.nodeIndex, -1);
+            for (int i = 0; i < this.nodes.size(); i++) {
+                this.nodeIndex[this.nodes.get(i).getRow() * this.fieldSize + this.nodes.get(i).getCol()] = i;
+            }
+        }
+        return this.nodeIndex[row * this.fieldSize + col];
+    }
+
+    public boolean isNodeAt(int row, int col) {
+        return this.getNodeIndexAt(row, col) != -1;
     }
 
     public void sortBridges() {
@@ -185,6 +214,50 @@ public class Game implements Serializable {
         return temp;
     }
 
+    // Returns for every node the number of bridges needed to reach the node furthest away from it, regardless of weight
+    // Uses breadth-first search over all bridges in the list, so after setPossibleBridges() this is the eccentricity in the possible-bridge graph
+    // Nodes that cannot reach all other nodes get Integer.MAX_VALUE
+    public int[] getEccentricities() {
+        HashMap<Integer, Integer> indexOf = new HashMap<>(); // Maps row * fieldSize + col to the index in this.nodes
+        for (int i = 0; i < this.nodes.size(); i++) {
+            indexOf.put(this.nodes.get(i).getRow() * this.fieldSize + this.nodes.get(i).getCol(), i);
+        }
+        ArrayList<ArrayList<Integer>> adjacent = new ArrayList<>();
+        for (int i = 0; i < this.nodes.size(); i++) {
+            adjacent.add(new ArrayList<>());
+        }
+        for (Bridge b : this.bridges) {
+            int a = indexOf.get(b.getA().getRow() * this.fieldSize + b.getA().getCol());
+            int c = indexOf.get(b.getB().getRow() * this.fieldSize + b.getB().getCol());
+            adjacent.get(a).add(c);
+            adjacent.get(c).add(a);
+        }
+
+        int[] eccentricities = new int[this.nodes.size()];
+        int[] distance = new int[this.nodes.size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int source = 0; source < this.nodes.size(); source++) {
+            Arrays.fill(distance, -1);
+            distance[source] = 0;
+            queue.add(source);
+            int reached = 1;
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                eccentricities[source] = distance[current]; // Queue is ordered by distance, so the last one polled is the furthest
+                for (int next : adjacent.get(current)) {
+                    if (distance[next] == -1) {
+                        distance[next] = distance[current] + 1;
+                        queue.add(next);
+                        reached++;
+                    }
+                }
+            }
+            if (reached < this.nodes.size())
+                eccentricities[source] = Integer.MAX_VALUE;
+        }
+        return eccentricities;
+    }
+
     // For graph encoding only
     // Sets bridges based on solution of SMT solver
     public void setBridgeWeights(ArrayList<BigInteger> solution) {
@@ -247,12 +320,10 @@ public class Game implements Serializable {
             put(BigInteger.valueOf(4), '‖');
         }};
 
-        int n = 0;
         for (int i = 0; i < this.fieldSize; i++) {
             for (int j = 0; j < this.fieldSize; j++) {
                 if (solution[i][j].equals(BigInteger.valueOf(5))) {
-                    this.field[i][j] = (char) (this.nodes.get(n).getValue() + '0');
-                    n++;
+                    this.field[i][j] = (char) (this.nodes.get(this.getNodeIndexAt(i, j)).getValue() + '0');
                 } else this.field[i][j] = mapping.get(solution[i][j]);
             }
         }
@@ -313,5 +384,154 @@ public class Game implements Serializable {
         return s.toString();
     }
 
-    // TODO solution check function
+    // Checks whether the bridge weights form a solution, without a solver. Every bridge needs a weight of 0, 1 or 2 and has to
+    // run straight between two nodes, nodes need exactly their value in bridges, built bridges may not cross each other or pass
+    // over a node, and all nodes have to be connected. Linear in the nodes, bridges and the cells the bridges cover
+    public boolean isValidSolution() {
+        int[] sums = new int[this.nodes.size()];
+        int[] parent = new int[this.nodes.size()]; // Union-find over the node indices
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        int components = this.nodes.size();
+        boolean[] occupied = new boolean[this.fieldSize * this.fieldSize]; // Cells covered by built bridges
+
+        for (Bridge b : this.bridges) {
+            if (b.getWeight() == null || b.getWeight().signum() < 0 || b.getWeight().compareTo(BigInteger.TWO) > 0)
+                return false;
+            int a = this.getNodeIndexAt(b.getA().getRow(), b.getA().getCol());
+            int c = this.getNodeIndexAt(b.getB().getRow(), b.getB().getCol());
+            if (a == -1 || c == -1)
+                return false; // Endpoint is not a node
+            boolean horizontal = b.getDirection() == Bridge.Direction.HORIZONTAL;
+            if (horizontal ? b.getA().getRow() != b.getB().getRow() || b.getA().getCol() >= b.getB().getCol()
+                    : b.getA().getCol() != b.getB().getCol() || b.getA().getRow() >= b.getB().getRow())
+                return false; // Not a straight bridge from A to B
+            int weight = b.getWeight().intValue();
+            if (weight == 0)
+                continue;
+
+            sums[a] += weight;
+            sums[c] += weight;
+
+            // Cells in between must be free, a node there means the bridge passes over it, a covered cell means a crossing
+            int from = horizontal ? b.getA().getCol() : b.getA().getRow();
+            int to = horizontal ? b.getB().getCol() : b.getB().getRow();
+            for (int i = from + 1; i < to; i++) {
+                int row = horizontal ? b.getA().getRow() : i;
+                int col = horizontal ? i : b.getA().getCol();
+                if (this.isNodeAt(row, col) || occupied[row * this.fieldSize + col])
+                    return false;
+                occupied[row * this.fieldSize + col] = true;
+            }
+
+            int rootA = find(parent, a);
+            int rootC = find(parent, c);
+            if (rootA != rootC) {
+                parent[rootA] = rootC;
+                components--;
+            }
+        }
+
+        for (int i = 0; i < this.nodes.size(); i++) {
+            if (sums[i] != this.nodes.get(i).getValue())
+                return false;
+        }
+        return components <= 1;
+    }
+
+    // Looks for a second solution that differs from the bridge weights only around a rectangle of four possible bridges
+    // Adding 1 to two opposite sides and taking 1 from the other two keeps every island's sum, so that is another solution if the
+    // weights stay within 0..2, sides that get built cross no built bridge, and at most one side ends up empty (the other three
+    // keep the corners connected). Expects all possible bridges with a weight, as after setPossibleBridges() and setNullBridgesToZero()
+    // Returns the weights of that solution (indices match bridges) or null, without a solver and in one pass over the bridges
+    public ArrayList<BigInteger> findLocalAlternativeSolution() {
+        int[] east = new int[this.nodes.size()]; // Index of the possible bridge to the east and south of every node, or -1
+        int[] south = new int[this.nodes.size()];
+        Arrays.fill(east, -1);
+        Arrays.fill(south, -1);
+        boolean[][] covered = new boolean[this.fieldSize][this.fieldSize]; // Cells between the endpoints of built bridges
+        for (int i = 0; i < this.bridges.size(); i++) {
+            Bridge b = this.bridges.get(i);
+            int a = this.getNodeIndexAt(b.getA().getRow(), b.getA().getCol());
+            if (b.getDirection() == Bridge.Direction.HORIZONTAL)
+                east[a] = i;
+            else south[a] = i;
+            if (b.getWeight().signum() > 0)
+                this.cover(b, covered);
+        }
+
+        for (int p = 0; p < this.nodes.size(); p++) { // p is the top left corner
+            if (east[p] == -1 || south[p] == -1)
+                continue;
+            Node topRight = this.bridges.get(east[p]).getB();
+            Node bottomLeft = this.bridges.get(south[p]).getB();
+            int right = south[this.getNodeIndexAt(topRight.getRow(), topRight.getCol())];
+            int bottom = east[this.getNodeIndexAt(bottomLeft.getRow(), bottomLeft.getCol())];
+            if (right == -1 || bottom == -1 || !this.bridges.get(right).getB().equals(this.bridges.get(bottom).getB()))
+                continue;
+
+            int[] sides = {east[p], right, bottom, south[p]}; // Going around, so opposite sides change in the same direction
+            for (int d = -1; d <= 1; d += 2) {
+                ArrayList<BigInteger> alternative = this.rotate(sides, d, covered);
+                if (alternative != null)
+                    return alternative;
+            }
+        }
+        return null;
+    }
+
+    // Weights after adding d to the first and third side and taking it from the others, or null if that is not a solution
+    private ArrayList<BigInteger> rotate(int[] sides, int d, boolean[][] covered) {
+        int[] weights = new int[4];
+        int empty = 0;
+        for (int k = 0; k < 4; k++) {
+            Bridge b = this.bridges.get(sides[k]);
+            weights[k] = b.getWeight().intValue() + (k % 2 == 0 ? d : -d);
+            if (weights[k] < 0 || weights[k] > 2)
+                return null;
+            if (weights[k] == 0)
+                empty++;
+            if (b.getWeight().signum() == 0 && this.crossesCovered(b, covered))
+                return null;
+        }
+        if (empty > 1)
+            return null;
+
+        ArrayList<BigInteger> alternative = new ArrayList<>();
+        for (Bridge b : this.bridges) {
+            alternative.add(b.getWeight());
+        }
+        for (int k = 0; k < 4; k++) {
+            alternative.set(sides[k], BigInteger.valueOf(weights[k]));
+        }
+        return alternative;
+    }
+
+    private void cover(Bridge b, boolean[][] covered) {
+        for (int row = b.getA().getRow(); row <= b.getB().getRow(); row++) {
+            for (int col = b.getA().getCol(); col <= b.getB().getCol(); col++) {
+                if ((row != b.getA().getRow() || col != b.getA().getCol()) && (row != b.getB().getRow() || col != b.getB().getCol()))
+                    covered[row][col] = true;
+            }
+        }
+    }
+
+    private boolean crossesCovered(Bridge b, boolean[][] covered) {
+        for (int row = b.getA().getRow(); row <= b.getB().getRow(); row++) {
+            for (int col = b.getA().getCol(); col <= b.getB().getCol(); col++) {
+                if (covered[row][col])
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // Path halving
+            i = parent[i];
+        }
+        return i;
+    }
 }
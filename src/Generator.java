@@ -1,11 +1,18 @@
 import org.sosy_lab.common.configuration.InvalidConfigurationException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Generator {
+    private static final int MAX_TRIES_FOR_NEW_NODE = 1000; // Above this we conclude no new node can be placed that meets the conditions
+    private static final int MAX_REPAIRS = 3; // Nodes or bridges placed to rule out alternative solutions before a candidate is given up
+
     private final Random random;
-    private final GraphSolver graphSolver = new GraphSolver();
-    private final GridSolver gridSolver= new GridSolver();
+    private final ArrayList<GraphSolver> graphSolvers; // Created on first use, a run only needs the solvers of its own encoding
+    private final ArrayList<GridSolver> gridSolvers;
+    private int speculation; // Number of extensions checked at the same time, 1 checks one after another
+    private int batchSize; // Number of nodes added before checking uniqueness, 1 checks after every node
+    private ExecutorService executor;
 
     private enum Direction {
         NORTH,
@@ -16,6 +23,33 @@ public class Generator {
 
     public Generator() throws InvalidConfigurationException {
         this.random = new Random();
+        this.graphSolvers = new ArrayList<>();
+        this.gridSolvers = new ArrayList<>();
+        this.speculation = 1;
+        this.batchSize = 1;
+    }
+
+    // Adds the given number of nodes (with their bridges) before checking uniqueness once. If the batch is not uniquely solvable,
+    // it is bisected and the game continues from the last insertion that still was. Takes precedence over speculation and repairs
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new RuntimeException("Batch size should be at least 1");
+        this.batchSize = batchSize;
+    }
+
+    // Checks the given number of random extensions of the game at the same time, on as many solvers and threads, and keeps the
+    // first one that is uniquely solvable. Pays off with several cores on large fields, where a single check takes long
+    public void setSpeculation(int candidates) {
+        if (candidates < 1)
+            throw new RuntimeException("Speculation needs at least one candidate");
+        if (this.executor != null)
+            this.executor.shutdown();
+        this.speculation = candidates;
+        this.executor = candidates > 1 ? Executors.newFixedThreadPool(candidates, r -> {
+            Thread thread = new Thread(r, "generator-check");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
     }
 
     public ArrayList<ArrayList<Long>> generateGames(int fieldSize, int nodeGoal, String encoding) {
@@ -26,7 +60,7 @@ public class Generator {
 
         ArrayList<Long> maximums = new ArrayList<>(); // Keeps track of results (maxTriesForNewNode, maxTriesForUniqueSol)
         ArrayList<Long> looptimes = new ArrayList<>(); // Keeps track of total time spent per loop
-        ArrayList<Long> uniquetimes = new ArrayList<>(); // Keeps track of total time spent per call of checkUniquelySolvable
+        ArrayList<Long> uniquetimes = new ArrayList<>(); // Keeps track of total time spent per uniqueness check, including the repairs
         ArrayList<Long> differences = new ArrayList<>(); // Keeps track of total
         long maxTriesForUniqueSolution = 0;
         long maxTriesForNewNode = 0;
@@ -40,54 +74,73 @@ public class Generator {
             t0 = System.currentTimeMillis();
             Game copy = new Game(game); // For restoring to state WITHOUT new node and bridges if not uniquely solvable after adding node
 
-            // Search for a potential new node to place, reachable from current game state
-            int triesForNewNode = 0; // Keeps track of how many times placing a new node was tried
-            Node n = null; // The source node
-            Node newNode = null; // The new node
-            while (newNode == null) { // Loop until a valid new node has been found to place
-                if (triesForNewNode >= 1000) { // Above this threshold we conclude no new node can be placed that meets the conditions
-                    System.out.println("ERROR: " + game.getNodes().size() + "/" + nodeGoal + " nodes were able to be placed:"); // TODO Dit staat in mn paper niet zo beschreven
-                    // Finish up and return the game
-                    this.setNodeValues(game); // Count all bridge weights to determine node values
-                    game.removeBridges(); // Remove all bridges to change solution into puzzle
-                    game.fillFieldGraphEncoding(); // Use graph encoding's fillField to make game printable
-//                    System.out.println(game);
-                    System.out.println(this.convertToID(game) + "\n");
-
-                    maximums.add(maxTriesForNewNode);
-                    maximums.add(maxTriesForUniqueSolution);
-                    return new ArrayList<>() {
-                        {
-                            add(maximums);
-                            add(looptimes);
-                            add(uniquetimes);
-                            add(differences);
-                        }
-                    };
-                }
-                n = game.getNodes().get(this.random.nextInt(game.getNodes().size())); // Choose random node to work from
-                newNode = chooseNewRandomNode(n, fieldSize, game); // Place random new node. Returns null if there is no possible new bridge and node to place from n
-                triesForNewNode++;
-                maxTriesForNewNode = Math.max(maxTriesForNewNode, triesForNewNode);
-            }
-
-            // Actually add the new node and bridge to the game
-            game.addNode(newNode); // Add new node to list of game nodes.
-            this.placeBridge(n, newNode, game); // Placea a bridge between the two nodes with a random weight (1 or 2)
-
-            // Generate random bridges from newly created node to reachable nodes (this creates loops)
-            int go;
-            for (Node neighborNode : this.getNeighbors(newNode, getRespectiveDirection(n, newNode), game)) { // For all nodes that can be reached from the new node (excluding source node)
-                go = this.random.nextInt(2); // 50% chance to set bridge or not
-                if (go == 1)
-                    this.placeBridge(newNode, neighborNode, game); // Place a bridge between the two nodes with a random weight (1 or 2)
+            // Search for a potential new node to place, reachable from current game state, and add it with its bridges
+            int triesForNewNode = this.proposeExtension(game, fieldSize);
+            if (triesForNewNode == -1) { // No new node can be placed that meets the conditions
+                maxTriesForNewNode = MAX_TRIES_FOR_NEW_NODE;
+                System.out.println("ERROR: " + game.getNodes().size() + "/" + nodeGoal + " nodes were able to be placed:"); // TODO Dit staat in mn paper niet zo beschreven
+                // Finish up and return the game
+                this.setNodeValues(game); // Count all bridge weights to determine node values
+                game.removeBridges(); // Remove all bridges to change solution into puzzle
+                game.fillFieldGraphEncoding(); // Use graph encoding's fillField to make game printable
+//                System.out.println(game);
+                System.out.println(this.convertToID(game) + "\n");
+
+                maximums.add(maxTriesForNewNode);
+                maximums.add(maxTriesForUniqueSolution);
+                return new ArrayList<>() {
+                    {
+                        add(maximums);
+                        add(looptimes);
+                        add(uniquetimes);
+                        add(differences);
+                    }
+                };
             }
+            maxTriesForNewNode = Math.max(maxTriesForNewNode, triesForNewNode);
 
             Game copy2 = new Game(game); // For restoring to state WITH new node and bridges if still uniquely solvable after adding node
 
             // Check if game is still uniquely solvable. Continue if so, undo changes to last uniquely solvalbe state ('copy')
+            // If it is not, first try to place nodes or bridges that rule out the alternative solution the solver found
+            // With speculation, other random extensions of 'copy' are checked at the same time and the first unique one is kept instead
+            // With batches, more extensions are added on top of this one and checked together, see lastUniqueSnapshot
             t1 = System.currentTimeMillis();
-            if(!this.checkUniquelySolvable(game, encoding)) {
+            boolean unique;
+            if (this.batchSize > 1) {
+                ArrayList<Game> snapshots = new ArrayList<>(); // The game after every insertion of the batch, starting without any
+                snapshots.add(copy);
+                snapshots.add(copy2);
+                while (snapshots.size() <= Math.min(this.batchSize, nodeGoal - nodeCount)) {
+                    Game next = new Game(snapshots.get(snapshots.size()-1));
+                    if (this.proposeExtension(next, fieldSize) == -1)
+                        break;
+                    snapshots.add(next);
+                }
+                int kept = this.lastUniqueSnapshot(snapshots, encoding);
+                unique = kept > 0;
+                if (unique)
+                    copy2 = snapshots.get(kept);
+            } else if (this.speculation > 1) {
+                Game accepted = this.firstUniqueExtension(copy, copy2, fieldSize, encoding);
+                unique = accepted != null;
+                if (unique)
+                    copy2 = accepted;
+            } else {
+                ArrayList<BigInteger> alternative = this.findAlternativeSolution(game, encoding);
+                int repairs = 0;
+                while (alternative != null && repairs < MAX_REPAIRS && game.getNodes().size() < nodeGoal) { // A repair may add a node
+                    Game repaired = new Game(copy2);
+                    if (!this.repairAmbiguity(repaired, game, alternative))
+                        break;
+                    repairs++;
+                    copy2 = repaired;
+                    game = new Game(repaired);
+                    alternative = this.findAlternativeSolution(game, encoding);
+                }
+                unique = alternative == null;
+            }
+            if (!unique) {
                 uniquetime = System.currentTimeMillis() - t1;
                 uniquetimes.add(uniquetime);
 
@@ -99,7 +152,7 @@ public class Generator {
                 uniquetimes.add(uniquetime);
 
                 triesForUniqueSolution = 0;
-                nodeCount++;
+                nodeCount = copy2.getNodes().size(); // Repairs may have added nodes as well
                 game = copy2; // If uniquely solvable, restore game to state WITH new node and bridges
             }
             looptime = System.currentTimeMillis() - t0;
@@ -144,6 +197,117 @@ public class Generator {
 
     }
 
+    // Adds a random new node to the game, with a bridge from an existing node and random bridges to the nodes it can reach
+    // Returns the number of nodes that were tried, or -1 (leaving the game unchanged) if none of the tries was possible
+    private int proposeExtension(Game game, int fieldSize) {
+        int triesForNewNode = 0; // Keeps track of how many times placing a new node was tried
+        Node n = null; // The source node
+        Node newNode = null; // The new node
+        while (newNode == null) { // Loop until a valid new node has been found to place
+            if (triesForNewNode >= MAX_TRIES_FOR_NEW_NODE)
+                return -1;
+            n = game.getNodes().get(this.random.nextInt(game.getNodes().size())); // Choose random node to work from
+            newNode = chooseNewRandomNode(n, fieldSize, game); // Place random new node. Returns null if there is no possible new bridge and node to place from n
+            triesForNewNode++;
+        }
+
+        // Actually add the new node and bridge to the game
+        game.addNode(newNode); // Add new node to list of game nodes.
+        this.placeBridge(n, newNode, game); // Placea a bridge between the two nodes with a random weight (1 or 2)
+
+        // Generate random bridges from newly created node to reachable nodes (this creates loops)
+        int go;
+        for (Node neighborNode : this.getNeighbors(newNode, getRespectiveDirection(n, newNode), game)) { // For all nodes that can be reached from the new node (excluding source node)
+            go = this.random.nextInt(2); // 50% chance to set bridge or not
+            if (go == 1)
+                this.placeBridge(newNode, neighborNode, game); // Place a bridge between the two nodes with a random weight (1 or 2)
+        }
+        return triesForNewNode;
+    }
+
+    // Checks first, an extension of base, together with speculation-1 more random extensions of base, each on its own solver
+    // Returns the first extension that turns out to be uniquely solvable or null if none is. The checks still running then are
+    // cancelled, so their solvers are free for the next node. Repairs are not tried here, the other extensions take their place
+    private Game firstUniqueExtension(Game base, Game first, int fieldSize, String encoding) {
+        ArrayList<Game> extensions = new ArrayList<>();
+        extensions.add(first);
+        while (extensions.size() < this.speculation) {
+            Game extension = new Game(base);
+            if (this.proposeExtension(extension, fieldSize) == -1)
+                break;
+            extensions.add(extension);
+        }
+
+        ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<>(this.executor);
+        ArrayList<Future<Integer>> checks = new ArrayList<>();
+        for (int i = 0; i < extensions.size(); i++) {
+            Game checked = new Game(extensions.get(i)); // The check adds all possible bridges, the extension itself stays as it is
+            int worker = i;
+            checks.add(completion.submit(() -> this.isUniquelySolvable(checked, encoding, worker) ? worker : -1));
+        }
+
+        Game accepted = null;
+        try {
+            for (int i = 0; i < checks.size() && accepted == null; i++) {
+                int worker = completion.take().get();
+                if (worker != -1)
+                    accepted = extensions.get(worker);
+            }
+            ArrayList<Integer> cancelled = new ArrayList<>();
+            for (int i = 0; i < checks.size(); i++) {
+                if (!checks.get(i).isDone()) { // A check that has not started yet stops as soon as it does
+                    this.cancel(encoding, i);
+                    cancelled.add(i);
+                }
+            }
+            for (Future<Integer> check : checks) { // Wait until every solver is idle again
+                check.get();
+            }
+            for (int worker : cancelled) { // A check may have finished just before its cancel, which must not hit the next check
+                this.withdrawCancel(encoding, worker);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        return accepted;
+    }
+
+    // Checks the last snapshot of a batch and, if it is not uniquely solvable, bisects the batch for an insertion after which the
+    // game stops being uniquely solvable. The first snapshot is the game before the batch, which is known to be uniquely solvable
+    // Returns the index of the snapshot to continue from, found with 1 check if the batch is fine and 1+log2(batch) otherwise
+    private int lastUniqueSnapshot(ArrayList<Game> snapshots, String encoding) {
+        int unique = 0;
+        int notUnique = snapshots.size()-1;
+        if (this.isUniquelySolvable(new Game(snapshots.get(notUnique)), encoding, 0))
+            return notUnique;
+        while (notUnique - unique > 1) {
+            int middle = (unique + notUnique) / 2;
+            if (this.isUniquelySolvable(new Game(snapshots.get(middle)), encoding, 0)) // The check changes the game, so use a copy
+                unique = middle;
+            else notUnique = middle;
+        }
+        return unique;
+    }
+
+    // A check that was cancelled or timed out counts as not unique
+    private boolean isUniquelySolvable(Game game, String encoding, int worker) {
+        ArrayList<BigInteger> alternative = this.findAlternativeSolution(game, encoding, worker);
+        SolveResult result = encoding.equals("Graph") ? this.graphSolver(worker).getLastResult() : this.gridSolver(worker).getLastResult();
+        return alternative == null && result != SolveResult.TIMEOUT;
+    }
+
+    private void cancel(String encoding, int worker) {
+        if (encoding.equals("Graph"))
+            this.graphSolver(worker).cancel();
+        else this.gridSolver(worker).cancel();
+    }
+
+    private void withdrawCancel(String encoding, int worker) {
+        if (encoding.equals("Graph"))
+            this.graphSolver(worker).withdrawCancel();
+        else this.gridSolver(worker).withdrawCancel();
+    }
+
     // Given a node and a square field's size, return a random node that's reachable from at least one existing node
     private Node chooseNewRandomNode(Node node, int size, Game game) {
         List<Direction> dirs = this.getPossibleDirections(node, size, game); // dirs = directions in which is still makes sense to place a new node and bridge
@@ -369,24 +533,109 @@ public class Generator {
         }
     }
 
-    private Boolean checkUniquelySolvable(Game game, String solver) {
+    // Returns a second solution of the game, as weights matching game.bridges after the call, or null if the solution is unique
+    // The game is turned into a puzzle with all possible bridges, the bridges that are not part of its solution get weight 0
+    private ArrayList<BigInteger> findAlternativeSolution(Game game, String solver) {
+        return this.findAlternativeSolution(game, solver, 0);
+    }
+
+    // Same, on the solver of the given worker, so that several checks can run at the same time
+    private ArrayList<BigInteger> findAlternativeSolution(Game game, String solver, int worker) {
         this.setNodeValues(game);
         game.sortNodes();
         game.setPossibleBridges();
         game.setNullBridgesToZero();
         game.sortBridges();
+        ArrayList<BigInteger> local = game.findLocalAlternativeSolution();
+        if (local != null)
+            return local; // Weights can be rotated around a rectangle, no need for the solver
         switch (solver) {
             case "Graph" -> {
-                return this.graphSolver.hasUniqueSolution(game);
+                return this.graphSolver(worker).findAlternativeSolution(game);
             }
             case "Grid" -> {
-                return this.gridSolver.hasUniqueSolution(game);
+                return this.gridSolver(worker).findAlternativeSolution(game);
+            }
+            default -> throw new RuntimeException("No such solver");
+        }
+    }
+
+    // Places a new node on a cell that a bridge of the alternative solution passes through while the intended solution leaves it
+    // empty, and connects it to an endpoint of that bridge. The alternative is then no longer possible in that form
+    // If every such cell is next to a node, the bridge itself is added to the intended solution instead, which changes the values
+    // of both endpoints. game holds the intended bridges only, checked is the game after findAlternativeSolution
+    // Returns false if nothing could be placed
+    private boolean repairAmbiguity(Game game, Game checked, ArrayList<BigInteger> alternative) {
+        boolean[][] covered = new boolean[game.getFieldSize()][game.getFieldSize()]; // Cells between the endpoints of intended bridges
+        for (Bridge b : game.getBridges()) {
+            for (int row = b.getA().getRow(); row <= b.getB().getRow(); row++) {
+                for (int col = b.getA().getCol(); col <= b.getB().getCol(); col++) {
+                    covered[row][col] = true;
+                }
+            }
+        }
+
+        ArrayList<Integer> differing = new ArrayList<>(); // Bridges only the alternative builds
+        for (int i = 0; i < alternative.size(); i++) {
+            if (alternative.get(i).signum() > 0 && checked.getBridges().get(i).getWeight().signum() == 0)
+                differing.add(i);
+        }
+        Collections.shuffle(differing, this.random);
+
+        for (int i : differing) {
+            Bridge b = checked.getBridges().get(i);
+            boolean fromA = this.random.nextBoolean();
+            Node start = fromA ? b.getA() : b.getB();
+            Node end = fromA ? b.getB() : b.getA();
+            int dRow = Integer.signum(end.getRow() - start.getRow());
+            int dCol = Integer.signum(end.getCol() - start.getCol());
+
+            ArrayList<Node> candidates = new ArrayList<>(); // Cells the new node can go, walking from start until an intended bridge is in the way
+            int row = start.getRow() + dRow;
+            int col = start.getCol() + dCol;
+            while ((row != end.getRow() || col != end.getCol()) && !covered[row][col]) {
+                Node candidate = new Node(row, col, 0);
+                if (!this.isNextToNode(candidate, game))
+                    candidates.add(candidate);
+                row += dRow;
+                col += dCol;
+            }
+            Node source = game.getNodes().get(game.getNodeIndexAt(start.getRow(), start.getCol()));
+            if (!candidates.isEmpty()) {
+                Node newNode = candidates.get(this.random.nextInt(candidates.size()));
+                game.addNode(newNode);
+                this.placeBridge(source, newNode, game);
+                return true;
+            }
+            if (row == end.getRow() && col == end.getCol()) { // No room for a node, but the bridge itself fits in the intended solution
+                this.placeBridge(source, game.getNodes().get(game.getNodeIndexAt(end.getRow(), end.getCol())), game);
+                return true;
             }
-            default -> {
-                System.out.println("No such solver");
-                return null;
+        }
+        return false;
+    }
+
+    // Solvers are created on first use, one per worker
+    private synchronized GraphSolver graphSolver(int worker) {
+        try {
+            while (this.graphSolvers.size() <= worker) {
+                this.graphSolvers.add(new GraphSolver());
+            }
+        } catch (InvalidConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        return this.graphSolvers.get(worker);
+    }
+
+    private synchronized GridSolver gridSolver(int worker) {
+        try {
+            while (this.gridSolvers.size() <= worker) {
+                this.gridSolvers.add(new GridSolver());
             }
+        } catch (InvalidConfigurationException e) {
+            throw new RuntimeException(e);
         }
+        return this.gridSolvers.get(worker);
     }
 
     private String convertToID (Game game) {
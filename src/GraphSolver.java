@@ -1,4 +1,3 @@
-import org.sosy_lab.common.ShutdownManager;
 import org.sosy_lab.common.configuration.Configuration;
 import org.sosy_lab.common.configuration.InvalidConfigurationException;
 import org.sosy_lab.common.log.BasicLogManager;
@@ -7,29 +6,203 @@ import org.sosy_lab.java_smt.SolverContextFactory;
 import org.sosy_lab.java_smt.api.*;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
 
 public class GraphSolver {
-    private final SolverContext context;
-    private final BooleanFormulaManager bmgr;
-    private final IntegerFormulaManager imgr;
+    private final SolverControl control = new SolverControl(); // Timeout, cancel and prover permits
+    private SolverContext context;
+    private BooleanFormulaManager bmgr;
+    private IntegerFormulaManager imgr;
     private NumeralFormula.IntegerFormula[] bridgeVariables;
     private BooleanFormula[][] connectionVariables;
+    private FormulaManager fmgr;
+    private AtomCache atoms;
+    private boolean instrumented = false;
+    private ConstraintReport report;
+    private FormulaStore formulaStore;
+    private boolean boundedConnectivity = false;
+    private SolveResult lastResult;
+    private int root; // Index of the node every other node must be reachable from
+    private int depth; // Amount of steps in the γ ladder
+    private static final int MAX_NODE_VALUE = 8; // Four directions with double bridges
+    private static final int MAX_TEMPLATES = 64;
+    private Game loadedGame; // Copy of the loaded game, loaded again after the context is replaced
+    private ProverEnvironment loadedProver; // Keeps the encoding of a loaded game between queries
+    private NumeralFormula.IntegerFormula[] loadedBridgeVariables;
+    private BooleanFormula[][] valueIndicators; // ν n,v: node n has value v
+    private BooleanFormula[][] weightIndicators; // ω b,w: bridge b has weight w
+    private ArrayList<String> lastConflictingConstraints;
+    private ProverEnvironment warmProver; // Kept open between puzzles, every puzzle is pushed on it and popped afterwards
+    private String assertedLayout; // Layout and γ ladder whose constraints are asserted on the warm prover, below the puzzle level
+    private final ArrayList<NumeralFormula.IntegerFormula> declaredBridgeVariables = new ArrayList<>(); // β i at index i
+    private final HashMap<Integer, ArrayList<ArrayList<BooleanFormula>>> declaredConnectionVariables = new HashMap<>(); // Root -> γ root,n,i at [n][i-1]
+    private final LinkedHashMap<String, Template> templates = new LinkedHashMap<>(16, 0.75f, true) { // Per layout, least recently used dropped first
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+            return this.size() > MAX_TEMPLATES;
+        }
+    };
 
     public GraphSolver() throws InvalidConfigurationException {
+        this.createContext();
+    }
+
+    private void createContext() throws InvalidConfigurationException {
         Configuration config = Configuration.defaultConfiguration();
         LogManager logger = BasicLogManager.create(config);
-        ShutdownManager shutdown = ShutdownManager.create();
         this.context = SolverContextFactory.createSolverContext(
-                config, logger, shutdown.getNotifier(), SolverContextFactory.Solvers.SMTINTERPOL);
+                config, logger, this.control.newNotifier(), SolverContextFactory.Solvers.SMTINTERPOL);
+
+        this.fmgr = this.context.getFormulaManager();
+        this.bmgr = this.fmgr.getBooleanFormulaManager();
+        this.imgr = this.fmgr.getIntegerFormulaManager();
+        this.atoms = new AtomCache(this.imgr);
+
+        // Everything below belonged to the previous context, if any
+        this.declaredBridgeVariables.clear();
+        this.declaredConnectionVariables.clear();
+        this.templates.clear();
+        this.warmProver = null;
+        this.assertedLayout = null;
+        this.loadedProver = null;
+        this.loadedBridgeVariables = null;
+        this.valueIndicators = null;
+        this.weightIndicators = null;
+    }
+
+    // A context cannot be used anymore after a timeout or cancel, so it is replaced before the next call. A loaded game is
+    // loaded again on the new context, it stays loaded until unloadGame or another loadGame
+    private void resetIfShutDown() {
+        if (!this.control.isShutDown())
+            return;
+        this.context.close();
+        try {
+            this.createContext();
+        } catch (InvalidConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        if (this.loadedGame != null)
+            this.loadGame(this.loadedGame);
+    }
+
+    // Closes the provers and the context, the solver cannot be used anymore afterwards
+    public void close() {
+        this.unloadGame();
+        if (this.warmProver != null)
+            this.warmProver.close();
+        this.warmProver = null;
+        this.context.close();
+    }
+
+    // Limits every following solveGame, findSolution and hasUniqueSolution call to the given time, 0 means no limit
+    public void setTimeout(long timeoutMillis) {
+        this.control.setTimeout(timeoutMillis);
+    }
+
+    // Stops the call that is running at the moment, from another thread. It ends the same way as when it runs out of time
+    // Without a running call, the next call is stopped as soon as it starts, see SolverControl.cancel
+    public void cancel() {
+        this.control.cancel();
+    }
 
-        FormulaManager fmgr = this.context.getFormulaManager();
-        this.bmgr = fmgr.getBooleanFormulaManager();
-        this.imgr = fmgr.getIntegerFormulaManager();
+    // Drops a cancel that is still waiting for the next call, for a caller whose call never started after all
+    public void withdrawCancel() {
+        this.control.withdrawCancel();
+    }
+
+    // Limits the prover section of solveGame (asserting the constraints, the check and reading the model) to the permits of the
+    // semaphore, which can be shared between solvers. Building the constraints is not limited, null means no limit at all
+    public void setProverPermits(Semaphore proverPermits) {
+        this.control.setProverPermits(proverPermits);
+    }
+
+    // Prepares the context for a call, which ends with control.endCall
+    private void startCall() {
+        this.resetIfShutDown(); // Only a finished call can have shut the context down, a pending cancel is kept by the control
+        this.control.startCall();
+    }
+
+    // Pushes the level for a puzzle on the warm prover. Below it, the layout constraints of the game are asserted first (once
+    // for consecutive puzzles with the same layout and γ ladder), so a puzzle itself only adds the constraints on its values
+    // Without layout, the level below is cleared for a puzzle that brings all of its constraints
+    private void pushPuzzle(ProverEnvironment prover, Game game, boolean layout) throws InterruptedException {
+        String key = layout ? this.layoutKey(game) + "|" + this.root + "," + this.depth : null;
+        if (key == null ? this.assertedLayout != null : !key.equals(this.assertedLayout)) {
+            if (this.assertedLayout != null)
+                prover.pop();
+            this.assertedLayout = null;
+            if (key != null) {
+                prover.push();
+                prover.addConstraint(this.validBridgeSizesConstraint(game));
+                prover.addConstraint(this.bridgesDontCrossConstraint(game));
+                prover.addConstraint(this.nodesConnectedConstraint(game));
+                this.assertedLayout = key;
+            }
+        }
+        prover.push();
+    }
+
+    // Pops a puzzle off the warm prover, unless the context was shut down and will be replaced anyway
+    private void popPuzzle(ProverEnvironment prover) {
+        if (!this.control.isShutDown())
+            prover.pop();
+    }
+
+    // With a store, solveGame writes the formula of every puzzle it builds to it and replays it from there on later runs,
+    // instead of building the constraints again. Only games parsed from a puzzle ID are stored
+    public void setFormulaStore(FormulaStore formulaStore) {
+        this.formulaStore = formulaStore;
+    }
+
+    // Encoding and γ ladder the current formula is built for, as variant in the formula store
+    private String formulaVariant() {
+        return "graph,root=" + this.root + ",depth=" + this.depth;
+    }
+
+    private BooleanFormula loadFormula(Game game) {
+        if (this.formulaStore == null || game.getId() == null)
+            return null;
+        String formula = this.formulaStore.load(game.getId(), this.formulaVariant());
+        return formula == null ? null : this.fmgr.parse(formula);
+    }
+
+    private void storeFormula(Game game, BooleanFormula formula) {
+        if (this.formulaStore != null && game.getId() != null)
+            this.formulaStore.store(game.getId(), this.formulaVariant(), this.fmgr.dumpFormula(formula).toString());
+    }
+
+    // When enabled, solveGame collects a ConstraintReport with the size and build time of every constraint family
+    public void setInstrumentation(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    // Report of the last puzzle solved by solveGame, null if instrumentation is disabled
+    public ConstraintReport getLastReport() {
+        return this.report;
+    }
+
+    // Outcome of the last solveGame call, the game is only filled in if it was SOLVED
+    // findSolution and hasUniqueSolution set it as well, to TIMEOUT if they ran out of time (and returned null or false) and SOLVED
+    // or UNSOLVABLE otherwise
+    public SolveResult getLastResult() {
+        return this.lastResult;
+    }
+
+    // When enabled, the most central node is used as root and the γ ladder starts at its eccentricity instead of nodes-1 steps
+    // The ladder is deepened whenever that turns out to be too shallow, so the outcome is the same as without the option
+    // Only the search for a solution starts shallow. An unsolvable puzzle is UNSAT at every depth, so it costs about log2(nodes)
+    // extra solves, and findAlternativeSolution and hasUniqueSolution always use the full ladder for the same reason
+    public void setBoundedConnectivity(boolean boundedConnectivity) {
+        this.boundedConnectivity = boundedConnectivity;
     }
 
 
     public ArrayList<Long> solveGame(Game game) {
-        this.createVariables(game);
+        this.startCall();
 
         long t0 = 0;
         long constrTime = 0;
@@ -41,56 +214,120 @@ public class GraphSolver {
         ArrayList<Long> times = new ArrayList<>();
 
         // Solve with SMT solver
-        Model model = null;
-        try (ProverEnvironment prover = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS)) {
-            // Add constraints
-            t0 = System.currentTimeMillis();
-
-            BooleanFormula validBridges = this.validBridgeSizesConstraint();
-//            System.out.println(validBridges);
-            prover.addConstraint(validBridges);
-
-            BooleanFormula bridgesDontCross = this.bridgesDontCrossConstraint(game);
-//            System.out.println(bridgesDontCross);
-            prover.addConstraint(bridgesDontCross);
-
-            BooleanFormula nodesSatisfied = this.nodesSatisfiedConstraint(game);
-//            System.out.println(nodesSatisfied);
-            prover.addConstraint(nodesSatisfied);
-
-            BooleanFormula nodesConnected = this.nodesConnectedConstraint(game);
-//            System.out.println(nodesConnected);
-            prover.addConstraint(nodesConnected);
-
-            constrTime = System.currentTimeMillis() - t0; // Time it takes to construct all constraints
-            times.add(constrTime);
-
-            t1 = System.currentTimeMillis();
-            boolean isUnsat = prover.isUnsat();
-            unsatTime = System.currentTimeMillis() - t1; // Time it takes to verify that the puzzle is unsatisfiable
-            times.add(unsatTime);
-
-            if (!isUnsat) {
-                t2 = System.currentTimeMillis();
-                model = prover.getModel();
-                satTime = System.currentTimeMillis() - t2; // Time it takes to retrieve the solution model
-                times.add(satTime);
-            }
-            totalTime = System.currentTimeMillis() - t1; // Total it takes to verify and retrieve solution (unsatTime + satTime)
-            times.add(totalTime);
+        ArrayList<BigInteger> solution = null;
+        boolean isUnsat = true;
+        boolean stopped = false; // Timed out or cancelled
+        try {
+            this.setConnectivityBounds(game);
+            while (solution == null) { // Only repeated when a bounded γ ladder turned out to be too shallow
+                this.createVariables(game);
+                this.report = this.instrumented ? new ConstraintReport(this.fmgr,
+                        "Graph encoding: " + game.getFieldSize() + "x" + game.getFieldSize() + ", " + game.getNodes().size() + " nodes, " + game.getBridges().size() + " possible bridges") : null;
+                ProverEnvironment prover = this.warmProver();
+                t0 = System.currentTimeMillis();
+                BooleanFormula stored = this.loadFormula(game); // Replayed from the formula store, if it has this puzzle
+                boolean permitted = false;
+                try {
+                    // Add constraints, the prover is only used once they are built
+                    if (stored != null) {
+                        long waiting = System.currentTimeMillis();
+                        this.control.acquireProverPermit();
+                        permitted = true;
+                        t0 += System.currentTimeMillis() - waiting; // Waiting for a permit is not construction time
+                        this.pushPuzzle(prover, game, false);
+                        prover.addConstraint(stored);
+                    } else {
+                        // The layout constraints come from the template (built only for a new layout) and stay on the prover while
+                        // the next puzzles have the same layout, see pushPuzzle. The report marks what the template already had
+                        Template template = this.template(game);
+                        String validBridgesSource = template.validBridgeSizes != null ? "template" : "built";
+                        String bridgesDontCrossSource = template.bridgesDontCross != null ? "template" : "built";
+                        String nodesConnectedSource = template.nodesConnected.containsKey(this.root + "," + this.depth) ? "template" : "built";
+                        String nodesSatisfiedSource = template.bridgeEndpointSums != null ? "partly" : "built";
+
+                        long tValidBridges = System.nanoTime();
+                        BooleanFormula validBridges = this.validBridgeSizesConstraint(game);
+                        this.record("validBridgeSizesConstraint", validBridges, tValidBridges, validBridgesSource);
+    //                    System.out.println(validBridges);
+
+                        this.control.shutdownIfNecessary(); // Building constraints does not check for a shutdown by itself
+                        long tBridgesDontCross = System.nanoTime();
+                        BooleanFormula bridgesDontCross = this.bridgesDontCrossConstraint(game);
+                        this.record("bridgesDontCrossConstraint", bridgesDontCross, tBridgesDontCross, bridgesDontCrossSource);
+    //                    System.out.println(bridgesDontCross);
+
+                        this.control.shutdownIfNecessary();
+                        long tNodesConnected = System.nanoTime();
+                        BooleanFormula nodesConnected = this.nodesConnectedConstraint(game);
+                        this.record("nodesConnectedConstraint", nodesConnected, tNodesConnected, nodesConnectedSource);
+    //                    System.out.println(nodesConnected);
+
+                        this.control.shutdownIfNecessary();
+                        long tNodesSatisfied = System.nanoTime();
+                        BooleanFormula nodesSatisfied = this.nodesSatisfiedConstraint(game);
+                        this.record("nodesSatisfiedConstraint", nodesSatisfied, tNodesSatisfied, nodesSatisfiedSource);
+    //                    System.out.println(nodesSatisfied);
+
+                        long waiting = System.currentTimeMillis();
+                        this.control.acquireProverPermit();
+                        permitted = true;
+                        t0 += System.currentTimeMillis() - waiting; // Waiting for a permit is not construction time
+                        this.pushPuzzle(prover, game, true);
+                        prover.addConstraint(nodesSatisfied);
+                        this.storeFormula(game, this.bmgr.and(validBridges, bridgesDontCross, nodesSatisfied, nodesConnected));
+                    }
+
+                    constrTime += System.currentTimeMillis() - t0; // Time it takes to construct all constraints
+
+                    t1 = System.currentTimeMillis();
+                    isUnsat = prover.isUnsat();
+                    unsatTime += System.currentTimeMillis() - t1; // Time it takes to verify that the puzzle is unsatisfiable
+
+                    if (!isUnsat) {
+                        t2 = System.currentTimeMillis();
+                        Model model = prover.getModel();
+                        satTime += System.currentTimeMillis() - t2; // Time it takes to retrieve the solution model
+
+                        // Retrieve solution, before the puzzle is popped from the prover
+                        solution = new ArrayList<>();
+                        for (NumeralFormula.IntegerFormula v : this.bridgeVariables) {
+                            solution.add(model.evaluate(v));
+                        }
+                    }
+                    totalTime += System.currentTimeMillis() - t1; // Total it takes to verify and retrieve solution (unsatTime + satTime)
+
+                } catch (SolverException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    stopped = true;
+                } finally {
+                    if (permitted) { // Nothing was pushed without a permit
+                        this.popPuzzle(prover);
+                        this.control.releaseProverPermit();
+                    }
+                }
 
-        } catch (SolverException | InterruptedException e) {
-            throw new RuntimeException(e);
+                if (stopped || (solution == null && !this.deepenConnectivityBounds(game)))
+                    break; // Out of time, or unsatisfiable even with the full γ ladder
+            }
+        } finally {
+            this.control.endCall();
         }
-
-        assert model != null;
-
-        // Retrieve solution
-        ArrayList<BigInteger> solution = new ArrayList<>();
-
-        for (NumeralFormula.IntegerFormula v : this.bridgeVariables) {
-            solution.add(model.evaluate(v));
+        times.add(constrTime);
+        times.add(unsatTime);
+        if (!isUnsat)
+            times.add(satTime);
+        times.add(totalTime);
+
+        if (stopped) { // Game is left as it was
+            this.lastResult = SolveResult.TIMEOUT;
+            return times;
+        }
+        if (solution == null) { // Unsolvable puzzle, game is left as it was
+            this.lastResult = SolveResult.UNSOLVABLE;
+            return times;
         }
+        this.lastResult = SolveResult.SOLVED;
 
         game.setBridgeWeights(solution);
         game.fillFieldGraphEncoding();
@@ -100,136 +337,582 @@ public class GraphSolver {
         return times;
     }
 
-    public Boolean hasUniqueSolution (Game game) {
+    // Returns the bridge weights of a solution (indices match game.bridges) or null if there is none, the game itself is not changed
+    public ArrayList<BigInteger> findSolution(Game game) {
+        this.startCall();
+        this.setConnectivityBounds(game);
+
+        try {
+            while (true) {
+                this.createVariables(game);
+                ProverEnvironment prover = this.warmProver();
+                try {
+                    this.pushPuzzle(prover, game, true);
+                    prover.addConstraint(this.nodesSatisfiedConstraint(game));
+
+                    if (!prover.isUnsat()) {
+                        Model model = prover.getModel();
+                        ArrayList<BigInteger> solution = new ArrayList<>();
+                        for (NumeralFormula.IntegerFormula v : this.bridgeVariables) {
+                            solution.add(model.evaluate(v));
+                        }
+                        this.lastResult = SolveResult.SOLVED;
+                        return solution;
+                    }
+                } catch (SolverException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    this.lastResult = SolveResult.TIMEOUT;
+                    return null;
+                } finally {
+                    this.popPuzzle(prover);
+                }
+                if (!this.deepenConnectivityBounds(game)) {
+                    this.lastResult = SolveResult.UNSOLVABLE;
+                    return null; // Unsatisfiable even with the full γ ladder
+                }
+            }
+        } finally {
+            this.control.endCall();
+        }
+    }
+
+    // Returns the islands whose values conflict with each other in an unsolvable game, or null if the game is solvable
+    // An empty list means the groups conflict without any island value, for example when the possible-bridge graph is not
+    // connected. getLastConflictingConstraints names the groups in either case
+    // Every group and every island's value is enabled by its own selector literal, so one isUnsat call yields an unsat core over
+    // the selectors. Selectors keep groups apart that simplify to the same formula. With minimize, islands are dropped from that
+    // core as long as it stays unsatisfiable
+    public ArrayList<Node> explainUnsolvable(Game game, boolean minimize) {
+        this.resetIfShutDown();
+        this.setConnectivityBounds(game);
+        this.depth = Math.max(0, game.getNodes().size()-1); // A too shallow γ ladder would show up as a conflict
         this.createVariables(game);
+        this.lastConflictingConstraints = new ArrayList<>();
+
+        try (ProverEnvironment prover = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_UNSAT_CORE)) {
+            HashMap<BooleanFormula, String> groups = new HashMap<>(); // Selector -> group name
+            this.addSelected(prover, groups, "validBridgeSizesConstraint", this.validBridgeSizesConstraint(game));
+            this.addSelected(prover, groups, "bridgesDontCrossConstraint", this.bridgesDontCrossConstraint(game));
+            this.addSelected(prover, groups, "nodesConnectedConstraint", this.nodesConnectedConstraint(game));
+            for (BooleanFormula selector : groups.keySet()) {
+                prover.addConstraint(selector);
+            }
 
-        try (ProverEnvironment prover = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS)) {
-            ArrayList<BooleanFormula> solList = new ArrayList<>();
-            for (int i = 0; i < this.bridgeVariables.length; i++) {
-                solList.add(this.imgr.equal(this.bridgeVariables[i], this.imgr.makeNumber(game.getBridges().get(i).getWeight())));
+            // One selector per island, pushed on top of the groups so they can be replaced while minimizing
+            HashMap<BooleanFormula, Node> islands = new HashMap<>(); // Selector -> island
+            ArrayList<BooleanFormula> islandSelectors = new ArrayList<>(); // In the order of game.nodes
+            for (int n = 0; n < game.getNodes().size(); n++) {
+                Node node = game.getNodes().get(n);
+                BooleanFormula selector = this.bmgr.makeVariable("ι" + n);
+                prover.addConstraint(this.bmgr.implication(selector, this.imgr.equal(this.bridgeEndpointSum(node, game), this.atoms.number(node.getValue()))));
+                islands.put(selector, node);
+                islandSelectors.add(selector);
+            }
+            prover.push();
+            for (BooleanFormula selector : islandSelectors) {
+                prover.addConstraint(selector);
             }
-            BooleanFormula isNotFirstSolution = this.bmgr.not(this.bmgr.and(solList));
 
-            // Add constraints
-            prover.addConstraint(isNotFirstSolution);
-            prover.addConstraint(this.validBridgeSizesConstraint());
-            prover.addConstraint(this.bridgesDontCrossConstraint(game));
-            prover.addConstraint(this.nodesSatisfiedConstraint(game));
-            prover.addConstraint(this.nodesConnectedConstraint(game));
+            if (!prover.isUnsat())
+                return null;
+            HashSet<BooleanFormula> unsatCore = new HashSet<>(prover.getUnsatCore());
+            this.setConflictingConstraints(groups, unsatCore);
+            ArrayList<BooleanFormula> core = new ArrayList<>();
+            for (BooleanFormula selector : islandSelectors) {
+                if (unsatCore.contains(selector))
+                    core.add(selector);
+            }
 
-            return prover.isUnsat();
+            if (minimize) {
+                for (int i = core.size()-1; i >= 0; i--) {
+                    BooleanFormula removed = core.remove(i);
+                    prover.pop();
+                    prover.push();
+                    for (BooleanFormula selector : core) {
+                        prover.addConstraint(selector);
+                    }
+                    if (!prover.isUnsat())
+                        core.add(i, removed); // Island is needed for the conflict
+                    else // Groups of the smaller conflict, which may need none of the islands at all
+                        this.setConflictingConstraints(groups, new HashSet<>(prover.getUnsatCore()));
+                }
+            }
+
+            ArrayList<Node> conflicting = new ArrayList<>();
+            for (BooleanFormula selector : core) {
+                conflicting.add(islands.get(selector));
+            }
+            return conflicting;
         } catch (SolverException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private void setConflictingConstraints(HashMap<BooleanFormula, String> groups, HashSet<BooleanFormula> unsatCore) {
+        this.lastConflictingConstraints = new ArrayList<>();
+        for (Map.Entry<BooleanFormula, String> group : groups.entrySet()) {
+            if (unsatCore.contains(group.getKey()))
+                this.lastConflictingConstraints.add(group.getValue());
+        }
+    }
+
+    // Asserts that a fresh selector literal implies the group, so the selector stands for the group in an unsat core
+    private void addSelected(ProverEnvironment prover, HashMap<BooleanFormula, String> groups, String name, BooleanFormula group) throws InterruptedException {
+        BooleanFormula selector = this.bmgr.makeVariable("ς" + name);
+        prover.addConstraint(this.bmgr.implication(selector, group));
+        groups.put(selector, name);
+    }
+
+    // Names of the constraint groups that took part in the conflict found by the last explainUnsolvable call
+    public ArrayList<String> getLastConflictingConstraints() {
+        return this.lastConflictingConstraints;
+    }
+
+    // Encodes a game once with its node values left open, after which isSolvableWithValues selects the values as assumptions
+    // and getHint also the weights of the bridges placed so far
+    // Only the node values and weights may change between queries, nodes and bridges have to stay the same. Replaces any loaded game
+    public void loadGame(Game game) {
+        this.unloadGame(); // First, so a reset does not load the old game again
+        this.resetIfShutDown();
+        this.loadedGame = new Game(game);
+        this.setConnectivityBounds(game);
+        this.depth = Math.max(0, game.getNodes().size()-1); // Assumptions must not be refuted by a too shallow γ ladder
+        this.createVariables(game);
+        this.loadedBridgeVariables = this.bridgeVariables;
+
+        this.valueIndicators = new BooleanFormula[game.getNodes().size()][MAX_NODE_VALUE+1];
+        for (int n = 0; n < game.getNodes().size(); n++) {
+            for (int v = 0; v <= MAX_NODE_VALUE; v++) {
+                this.valueIndicators[n][v] = this.bmgr.makeVariable("ν" + n + "," + v);
+            }
+        }
+        this.weightIndicators = new BooleanFormula[game.getBridges().size()][3];
+        for (int b = 0; b < game.getBridges().size(); b++) {
+            for (int w = 0; w <= 2; w++) {
+                this.weightIndicators[b][w] = this.bmgr.makeVariable("ω" + b + "," + w);
+            }
+        }
+
+        this.loadedProver = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS);
+        try {
+            this.loadedProver.addConstraint(this.validBridgeSizesConstraint(game));
+            this.loadedProver.addConstraint(this.bridgesDontCrossConstraint(game));
+            this.loadedProver.addConstraint(this.nodesSatisfiedByIndicatorsConstraint(game));
+            this.loadedProver.addConstraint(this.bridgeWeightIndicatorsConstraint());
+            this.loadedProver.addConstraint(this.nodesConnectedConstraint(game));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Checks whether the loaded game is solvable with the node values currently set in game
+    // If so, the solution is written to game as with solveGame
+    public boolean isSolvableWithValues(Game game) {
+        this.resetIfShutDown();
+        if (this.loadedProver == null)
+            throw new RuntimeException("No game loaded");
+        if (game.getNodes().size() != this.valueIndicators.length || game.getBridges().size() != this.loadedBridgeVariables.length)
+            throw new RuntimeException("Game does not match the loaded game");
+
+        ArrayList<BooleanFormula> assumptions = new ArrayList<>();
+        for (int n = 0; n < game.getNodes().size(); n++) {
+            int value = game.getNodes().get(n).getValue();
+            if (value < 0 || value > MAX_NODE_VALUE)
+                return false;
+            assumptions.add(this.valueIndicators[n][value]);
+        }
+
+        try {
+            if (this.loadedProver.isUnsatWithAssumptions(assumptions))
+                return false;
+            Model model = this.loadedProver.getModel();
+            ArrayList<BigInteger> solution = new ArrayList<>();
+            for (NumeralFormula.IntegerFormula v : this.loadedBridgeVariables) {
+                solution.add(model.evaluate(v));
+            }
+            game.setBridgeWeights(solution);
+            game.fillFieldGraphEncoding();
+            return true;
+        } catch (SolverException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Returns a bridge the player has not placed yet whose weight follows from the node values and the bridges placed so far
+    // in board, as a new Bridge with that weight. Bridges with a null weight are not placed yet
+    // Returns null if no open bridge is forced, or if the board cannot be completed at all
+    public Bridge getHint(Game board) {
+        ArrayList<BooleanFormula> assumptions = this.boardAssumptions(board);
+        if (assumptions == null)
+            return null;
+
+        try {
+            if (this.loadedProver.isUnsatWithAssumptions(assumptions))
+                return null; // Placed bridges contradict every solution
+
+            // Open bridges keep the weight of the first solution as candidate, until a solution with another weight shows up
+            int[] candidates = new int[this.loadedBridgeVariables.length]; // Weight, or -1 if not forced (or placed)
+            Model model = this.loadedProver.getModel();
+            for (int b = 0; b < candidates.length; b++) {
+                candidates[b] = board.getBridges().get(b).getWeight() == null ? model.evaluate(this.loadedBridgeVariables[b]).intValue() : -1;
+            }
+
+            for (int b = 0; b < candidates.length; b++) {
+                if (candidates[b] == -1)
+                    continue;
+                assumptions.add(this.bmgr.not(this.weightIndicators[b][candidates[b]]));
+                boolean forced = this.loadedProver.isUnsatWithAssumptions(assumptions);
+                assumptions.remove(assumptions.size()-1);
+                if (forced) {
+                    Bridge open = board.getBridges().get(b);
+                    return new Bridge(open.getA(), open.getB(), BigInteger.valueOf(candidates[b]), open.getDirection());
+                }
+
+                model = this.loadedProver.getModel(); // Another solution, which rules out every candidate it disagrees with
+                for (int c = b; c < candidates.length; c++) {
+                    if (candidates[c] != -1 && model.evaluate(this.loadedBridgeVariables[c]).intValue() != candidates[c])
+                        candidates[c] = -1;
+                }
+            }
+            return null;
+        } catch (SolverException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Checks whether the bridges placed so far in board (those with a weight) can be completed to a solution of the loaded game
+    public boolean isCompletable(Game board) {
+        ArrayList<BooleanFormula> assumptions = this.boardAssumptions(board);
+        if (assumptions == null)
+            return false;
+        try {
+            return !this.loadedProver.isUnsatWithAssumptions(assumptions);
+        } catch (SolverException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Value indicators for the node values and weight indicators for the placed bridges of board
+    // Returns null if a value or weight can never hold, the board is not completable then
+    private ArrayList<BooleanFormula> boardAssumptions(Game board) {
+        this.resetIfShutDown(); // After a timeout or cancel of another call
+        if (this.loadedProver == null)
+            throw new RuntimeException("No game loaded");
+        if (board.getNodes().size() != this.valueIndicators.length || board.getBridges().size() != this.weightIndicators.length)
+            throw new RuntimeException("Game does not match the loaded game");
+
+        ArrayList<BooleanFormula> assumptions = new ArrayList<>();
+        for (int n = 0; n < board.getNodes().size(); n++) {
+            int value = board.getNodes().get(n).getValue();
+            if (value < 0 || value > MAX_NODE_VALUE)
+                return null;
+            assumptions.add(this.valueIndicators[n][value]);
+        }
+        for (int b = 0; b < board.getBridges().size(); b++) {
+            BigInteger weight = board.getBridges().get(b).getWeight();
+            if (weight == null)
+                continue;
+            if (weight.signum() < 0 || weight.compareTo(BigInteger.TWO) > 0)
+                return null;
+            assumptions.add(this.weightIndicators[b][weight.intValue()]);
+        }
+        return assumptions;
+    }
+
+    // Closes the prover of the loaded game
+    public void unloadGame() {
+        if (this.loadedProver != null)
+            this.loadedProver.close();
+        this.loadedGame = null;
+        this.loadedProver = null;
+        this.loadedBridgeVariables = null;
+        this.valueIndicators = null;
+        this.weightIndicators = null;
+    }
+
+    // Adds a constraint family to the report (if instrumented), start is the System.nanoTime() before building it and source
+    // whether it was built or taken from the layout's template, see ConstraintReport
+    private void record(String family, BooleanFormula constraint, long start, String source) {
+        long buildTime = System.nanoTime() - start;
+        if (this.report != null)
+            this.report.add(family, constraint, buildTime, source);
+    }
+
+    public Boolean hasUniqueSolution (Game game) {
+        return this.findAlternativeSolution(game) == null && this.lastResult != SolveResult.TIMEOUT; // Uniqueness was not shown on a timeout
+    }
+
+    // Returns a solution other than the bridge weights in game (indices match game.bridges), or null if there is none or on a timeout
+    public ArrayList<BigInteger> findAlternativeSolution(Game game) {
+        this.startCall();
+        this.setConnectivityBounds(game);
+        this.depth = Math.max(0, game.getNodes().size()-1); // No other solution is UNSAT at every bounded depth, deepening would only repeat the query
+
+        try {
+            this.createVariables(game);
+            ProverEnvironment prover = this.warmProver();
+            try {
+                this.pushPuzzle(prover, game, true);
+                ArrayList<BooleanFormula> solList = new ArrayList<>();
+                for (int i = 0; i < this.bridgeVariables.length; i++) {
+                    solList.add(this.atoms.equal(this.bridgeVariables[i], game.getBridges().get(i).getWeight()));
+                }
+                BooleanFormula isNotFirstSolution = this.bmgr.not(this.bmgr.and(solList));
+
+                // Add constraints
+                prover.addConstraint(isNotFirstSolution);
+                prover.addConstraint(this.nodesSatisfiedConstraint(game));
+
+                if (!prover.isUnsat()) {
+                    Model model = prover.getModel();
+                    ArrayList<BigInteger> alternative = new ArrayList<>();
+                    for (NumeralFormula.IntegerFormula v : this.bridgeVariables) {
+                        alternative.add(model.evaluate(v));
+                    }
+                    this.lastResult = SolveResult.SOLVED;
+                    return alternative;
+                }
+                this.lastResult = SolveResult.SOLVED;
+                return null;
+            } catch (SolverException e) {
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                this.lastResult = SolveResult.TIMEOUT;
+                return null;
+            } finally {
+                this.popPuzzle(prover);
+            }
+        } finally {
+            this.control.endCall();
+        }
+    }
+
 
     private void createVariables(Game game) {
         // Create variables for each potential bridge (a.k.a. moves to make)
         // Indices of these variables match directly with the indices in game.bridges
+        // Variables are only declared once per solver, a puzzle of the same or a smaller size reuses the declarations of earlier ones
         this.bridgeVariables = new NumeralFormula.IntegerFormula[game.getBridges().size()];
+        for (int i = this.declaredBridgeVariables.size(); i < game.getBridges().size(); i++) {
+            this.declaredBridgeVariables.add(this.imgr.makeVariable("β" + i));
+        }
         for (int i = 0; i < (game.getBridges().size()); i++) {
-            this.bridgeVariables[i] = this.imgr.makeVariable("β" + i);
+            this.bridgeVariables[i] = this.declaredBridgeVariables.get(i);
         }
 
-        // Create variables for connectedness of each node pair in AT MOST i amount of steps, where i is at most edges-1
-        // Indices i and j of these variables match directly with the indices in game.nodes
-        this.connectionVariables = new BooleanFormula[game.getNodes().size()][game.getNodes().size()];
+        // Create variables for connectedness of the root and each node in AT MOST i amount of steps, where i is at most edges-1
+        // The first index matches directly with the indices in game.nodes, the second is the amount of steps up to the ladder depth
+        ArrayList<ArrayList<BooleanFormula>> declared = this.declaredConnectionVariables.computeIfAbsent(this.root, r -> new ArrayList<>());
+        this.connectionVariables = new BooleanFormula[game.getNodes().size()][this.depth+1];
         for (int n = 0; n < (game.getNodes().size()); n++) {
-            for (int i = 1; i < (game.getNodes().size()); i++) {
-                this.connectionVariables[n][i] = this.bmgr.makeVariable("γ0," + n + "," + i);
+            if (n == declared.size())
+                declared.add(new ArrayList<>());
+            for (int i = declared.get(n).size() + 1; i <= this.depth; i++) {
+                declared.get(n).add(this.bmgr.makeVariable("γ" + this.root + "," + n + "," + i));
+            }
+            for (int i = 1; i <= this.depth; i++) {
+                this.connectionVariables[n][i] = declared.get(n).get(i-1);
             }
         }
     }
 
+    // Template of the constraints that only depend on where the islands and possible bridges are, not on the island values
+    // Puzzles with the same layout get the same formulas, because the β variables are shared, so they are built only once
+    // Only GraphSolver has templates. GridSolver builds all constraints of every puzzle again, reusing only its variables and prover
+    private static class Template {
+        BooleanFormula validBridgeSizes;
+        BooleanFormula bridgesDontCross;
+        NumeralFormula.IntegerFormula[] bridgeEndpointSums;
+        final HashMap<String, BooleanFormula> nodesConnected = new HashMap<>(); // Per γ ladder ("root,depth")
+    }
+
+    private Template template(Game game) {
+        return this.templates.computeIfAbsent(this.layoutKey(game), k -> new Template());
+    }
+
+    // Lists the field size, the islands and the possible bridges in order, as the bridge order decides which β is which
+    private String layoutKey(Game game) {
+        StringBuilder key = new StringBuilder().append(game.getFieldSize()).append(':');
+        for (Node n : game.getNodes()) {
+            key.append(n.getRow() * game.getFieldSize() + n.getCol()).append(',');
+        }
+        key.append(':');
+        for (Bridge b : game.getBridges()) {
+            key.append(b.getA().getRow() * game.getFieldSize() + b.getA().getCol()).append('-')
+                    .append(b.getB().getRow() * game.getFieldSize() + b.getB().getCol()).append(',');
+        }
+        return key.toString();
+    }
+
+    // Prover used by solveGame, findSolution and hasUniqueSolution, opened on first use
+    private ProverEnvironment warmProver() {
+        if (this.warmProver == null)
+            this.warmProver = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS);
+        return this.warmProver;
+    }
+
+    // Chooses the root node and depth of the γ ladder, which are node 0 and nodes-1 steps unless connectivity is bounded
+    // Every solution needs at least the root's eccentricity in the possible-bridge graph as depth, so that is where a bounded ladder starts
+    private void setConnectivityBounds(Game game) {
+        this.root = 0;
+        this.depth = Math.max(0, game.getNodes().size()-1);
+        if (this.boundedConnectivity && game.getNodes().size() > 1) {
+            int[] eccentricities = game.getEccentricities();
+            for (int n = 1; n < eccentricities.length; n++) {
+                if (eccentricities[n] < eccentricities[this.root]) // Most central node has the lowest eccentricity
+                    this.root = n;
+            }
+            this.depth = Math.max(1, Math.min(eccentricities[this.root], this.depth));
+        }
+    }
+
+    // Doubles the depth of the γ ladder after an unsatisfiable attempt, returns false if the full depth was already used
+    private boolean deepenConnectivityBounds(Game game) {
+        if (this.depth >= game.getNodes().size()-1)
+            return false;
+        this.depth = Math.min(2 * this.depth, game.getNodes().size()-1);
+        return true;
+    }
+
 
     // Constraint 3: Bridges are either non-existent, single, or double
-    private BooleanFormula validBridgeSizesConstraint() {
+    private BooleanFormula validBridgeSizesConstraint(Game game) {
+        Template template = this.template(game);
+        if (template.validBridgeSizes != null)
+            return template.validBridgeSizes;
         ArrayList<BooleanFormula> validBridgeSizesList = new ArrayList<>();
         for (NumeralFormula.IntegerFormula v : this.bridgeVariables) {
             validBridgeSizesList.add(
                     this.bmgr.and(
-                            this.imgr.greaterOrEquals(v, this.imgr.makeNumber(0)),
-                            this.imgr.lessOrEquals(v, this.imgr.makeNumber(2))
+                            this.imgr.greaterOrEquals(v, this.atoms.number(0)),
+                            this.imgr.lessOrEquals(v, this.atoms.number(2))
                     )
             );
         }
-        return this.bmgr.and(validBridgeSizesList);
+        template.validBridgeSizes = this.bmgr.and(validBridgeSizesList);
+        return template.validBridgeSizes;
     }
 
 
     // Constraint 4: Bridges don't cross
+    // The coordinates are constants, so whether two bridges would cross is decided here rather than by the solver
     private BooleanFormula bridgesDontCrossConstraint(Game game) {
+        Template template = this.template(game);
+        if (template.bridgesDontCross != null)
+            return template.bridgesDontCross;
         ArrayList<BooleanFormula> bridgesDontCrossList = new ArrayList<>();
         for (int i = 0; i < this.bridgeVariables.length; i++) {
             for (int j = 0; j < this.bridgeVariables.length; j++) {
                 if (game.getBridges().get(i).getDirection() == Bridge.Direction.HORIZONTAL
-                        && game.getBridges().get(j).getDirection() == Bridge.Direction.VERTICAL) { // Compare every horizontal bridge with all verticals
+                        && game.getBridges().get(j).getDirection() == Bridge.Direction.VERTICAL // Compare every horizontal bridge with all verticals
+                        && game.getBridges().get(i).crosses(game.getBridges().get(j))) {
                     bridgesDontCrossList.add(
-                            this.bmgr.implication(
-                                    this.bmgr.and( // If both bridges actually exist
-                                            this.imgr.greaterThan(this.bridgeVariables[i], this.imgr.makeNumber(0)),
-                                            this.imgr.greaterThan(this.bridgeVariables[j], this.imgr.makeNumber(0))
-                                    ),
-                                    this.bmgr.not(this.bmgr.and( // Then the bridges may not cross
-                                            // x coord of upper (and implicitly bottom) endpoint of ver. bridge is in between x coords of hor. bridge
-                                            this.imgr.greaterThan(this.imgr.makeNumber(game.getBridges().get(j).getA().getCol()), this.imgr.makeNumber(game.getBridges().get(i).getA().getCol())),
-                                            this.imgr.lessThan(this.imgr.makeNumber(game.getBridges().get(j).getA().getCol()), this.imgr.makeNumber(game.getBridges().get(i).getB().getCol())),
-                                            // y coord of upper endpoint of ver. bridge is above y coords of hor. bridge
-                                            this.imgr.lessThan(this.imgr.makeNumber(game.getBridges().get(j).getA().getRow()), this.imgr.makeNumber(game.getBridges().get(i).getA().getRow())),
-                                            this.imgr.lessThan(this.imgr.makeNumber(game.getBridges().get(j).getA().getRow()), this.imgr.makeNumber(game.getBridges().get(i).getB().getRow())),
-                                            // y coord of bottom endpoint of ver. bridge is under y coords of hor. bridge
-                                            this.imgr.greaterThan(this.imgr.makeNumber(game.getBridges().get(j).getB().getRow()), this.imgr.makeNumber(game.getBridges().get(i).getA().getRow())),
-                                            this.imgr.greaterThan(this.imgr.makeNumber(game.getBridges().get(j).getB().getRow()), this.imgr.makeNumber(game.getBridges().get(i).getB().getRow()))
-                                    ))
-                            )
+                            this.bmgr.not(this.bmgr.and( // Crossing bridges may not both exist
+                                    this.atoms.positive(this.bridgeVariables[i]),
+                                    this.atoms.positive(this.bridgeVariables[j])
+                            ))
                     );
                 }
             }
         }
-        return this.bmgr.and(bridgesDontCrossList);
+        template.bridgesDontCross = this.bmgr.and(bridgesDontCrossList);
+        return template.bridgesDontCross;
     }
 
 
     // Constraint 5: Node values are satisfied by bridge endpoints
+    // The only constraint that depends on the values, the sums of the bridges come from the layout's template
     private BooleanFormula nodesSatisfiedConstraint(Game game) {
+        NumeralFormula.IntegerFormula[] sums = this.bridgeEndpointSums(game);
         ArrayList<BooleanFormula> nodesSatisfiedList = new ArrayList<>();
-        for (Node n : game.getNodes()) {
-            NumeralFormula.IntegerFormula ctr = this.imgr.makeNumber(0);
-            for (int i = 0; i < this.bridgeVariables.length; i++) {
-                if (game.getBridges().get(i).getA().equals(n) || game.getBridges().get(i).getB().equals(n)) {
-                    ctr = this.imgr.add(ctr, this.bridgeVariables[i]); // ctr = sum of amount of bridge endpoints (including weight) on one node
-                }
-            }
+        for (int n = 0; n < game.getNodes().size(); n++) {
             nodesSatisfiedList.add(
-                    this.imgr.equal(ctr, this.imgr.makeNumber(n.getValue()))
+                    this.imgr.equal(sums[n], this.atoms.number(game.getNodes().get(n).getValue()))
             );
         }
         return this.bmgr.and(nodesSatisfiedList);
     }
 
+    // Links ω b,w to the weight of bridge b, so weights can be assumed and refuted as single literals
+    private BooleanFormula bridgeWeightIndicatorsConstraint() {
+        ArrayList<BooleanFormula> weightIndicatorsList = new ArrayList<>();
+        for (int b = 0; b < this.bridgeVariables.length; b++) {
+            for (int w = 0; w <= 2; w++) {
+                weightIndicatorsList.add(
+                        this.bmgr.equivalence(this.weightIndicators[b][w], this.atoms.equal(this.bridgeVariables[b], w))
+                );
+            }
+        }
+        return this.bmgr.and(weightIndicatorsList);
+    }
+
+    // Constraint 5 with selectable node values: ν n,v => node n is satisfied with value v
+    private BooleanFormula nodesSatisfiedByIndicatorsConstraint(Game game) {
+        NumeralFormula.IntegerFormula[] sums = this.bridgeEndpointSums(game);
+        ArrayList<BooleanFormula> nodesSatisfiedList = new ArrayList<>();
+        for (int n = 0; n < game.getNodes().size(); n++) {
+            NumeralFormula.IntegerFormula ctr = sums[n];
+            for (int v = 0; v <= MAX_NODE_VALUE; v++) {
+                nodesSatisfiedList.add(
+                        this.bmgr.implication(this.valueIndicators[n][v], this.imgr.equal(ctr, this.atoms.number(v)))
+                );
+            }
+        }
+        return this.bmgr.and(nodesSatisfiedList);
+    }
+
+    // bridgeEndpointSum for every node (indices match game.nodes), kept in the layout's template
+    private NumeralFormula.IntegerFormula[] bridgeEndpointSums(Game game) {
+        Template template = this.template(game);
+        if (template.bridgeEndpointSums == null) {
+            template.bridgeEndpointSums = new NumeralFormula.IntegerFormula[game.getNodes().size()];
+            for (int n = 0; n < game.getNodes().size(); n++) {
+                template.bridgeEndpointSums[n] = this.bridgeEndpointSum(game.getNodes().get(n), game);
+            }
+        }
+        return template.bridgeEndpointSums;
+    }
+
+    // Sum of amount of bridge endpoints (including weight) on one node
+    private NumeralFormula.IntegerFormula bridgeEndpointSum(Node n, Game game) {
+        NumeralFormula.IntegerFormula ctr = this.atoms.number(0);
+        for (int i = 0; i < this.bridgeVariables.length; i++) {
+            if (game.getBridges().get(i).getA().equals(n) || game.getBridges().get(i).getB().equals(n)) {
+                ctr = this.imgr.add(ctr, this.bridgeVariables[i]);
+            }
+        }
+        return ctr;
+    }
+
 
     // Constraint 6: Everything is strongly connected
     BooleanFormula nodesConnectedConstraint(Game game) {
+        Template template = this.template(game);
+        String ladder = this.root + "," + this.depth; // The layout's template has one per γ ladder
+        if (template.nodesConnected.containsKey(ladder))
+            return template.nodesConnected.get(ladder);
         ArrayList<BooleanFormula> everythingConnectedList = new ArrayList<>();
         for (int dest = 0; dest < game.getNodes().size(); dest++) {
-            for (int i = 1; i < game.getNodes().size(); i++) {
-                if (0 == dest) { // γ0,0,i <=> True
+            for (int i = 1; i <= this.depth; i++) {
+                if (this.root == dest) { // γr,r,i <=> True, with r the root
                     everythingConnectedList.add(this.areNodesConnectedTrue(dest, i));
-                } else if (i == 1) { // γ0,2,1 <=> x1  or  γ0,3,1 <=> False
+                } else if (i == 1) { // γr,2,1 <=> x1  or  γr,3,1 <=> False
                     everythingConnectedList.add(this.areNodesConnectedInOneStep(dest, game));
-                } else { // γ0,3,2 <=> γ0,3,1 \/ (γ0,1,1 /\ x2) \/ (γ0,2,1 /\ x3)
+                } else { // γr,3,2 <=> γr,3,1 \/ (γr,1,1 /\ x2) \/ (γr,2,1 /\ x3)
                     everythingConnectedList.add(this.areNodesConnectedInISteps(dest, i, game));
                 }
-                if (i == game.getNodes().size()-1) { // γ0,x,n-1 <=> True
+                if (i == this.depth) { // γr,x,depth <=> True, where depth is n-1 or the bounded depth
                     everythingConnectedList.add(this.areNodesConnectedTrue(dest, i));
                 }
             }
         }
-        return this.bmgr.and(everythingConnectedList);
+        BooleanFormula nodesConnected = this.bmgr.and(everythingConnectedList);
+        template.nodesConnected.put(ladder, nodesConnected);
+        return nodesConnected;
     }
 
-    // Set a γ to true (if 0 == destination (vacuously) or if γx,y,n-1 (force connectedness))
+    // Set a γ to true (if root == destination (vacuously) or if γx,y,n-1 (force connectedness))
     private BooleanFormula areNodesConnectedTrue(int dest, int i) {
         return this.connectionVariables[dest][i];
     }
@@ -238,18 +921,15 @@ public class GraphSolver {
     private BooleanFormula areNodesConnectedInOneStep(int dest, Game game) {
         ArrayList<Bridge> neighbors = game.getBridgesFrom(game.getNodes().get(dest)); // Retrieve bridges connected to destination node
         for (Bridge b : neighbors) {
-            if ((b.getA().equals(game.getNodes().get(0)) && b.getB().equals(game.getNodes().get(dest)))) { // Only need to check one direction since node 0 is always in top left
-                // If node 0 and destination node form the two bridge endpoints of one of the adjacent bridges
+            if (b.getA().equals(game.getNodes().get(this.root)) || b.getB().equals(game.getNodes().get(this.root))) { // Root can be either endpoint, the other one is destination
+                // If root and destination node form the two bridge endpoints of one of the adjacent bridges
                 return this.bmgr.equivalence( // Connected in 1 <=> bridge should exist
                         this.connectionVariables[dest][1],
-                        this.imgr.greaterThan(
-                                this.bridgeVariables[game.getBridges().indexOf(b)],
-                                this.imgr.makeNumber(0)
-                        )
+                        this.atoms.positive(this.bridgeVariables[game.getBridges().indexOf(b)])
                 );
             }
         }
-        // If node 0 and destination node don't form an adjacent bridge and thus not reachable in 1 step
+        // If root and destination node don't form an adjacent bridge and thus not reachable in 1 step
         return this.bmgr.not(
                 this.connectionVariables[dest][1]
         );
@@ -258,7 +938,7 @@ public class GraphSolver {
     // Set a γ variable equivalent to a shorter connection or express in neighbors perspective
     private BooleanFormula areNodesConnectedInISteps(int dest, int i, Game game) {
         ArrayList<Bridge> neighbors = game.getBridgesFrom(game.getNodes().get(dest)); // Retrieve bridges connected to destination
-        ArrayList<BooleanFormula> temp = new ArrayList<>(); // Temporary list of conjunctions (γ0,n3,i-1 /\ x*)
+        ArrayList<BooleanFormula> temp = new ArrayList<>(); // Temporary list of conjunctions (γr,n3,i-1 /\ x*)
         for (Bridge b : neighbors) { // for every neighboring node describe what reaching destination from there means
             int n3; // n3 will be the node we will try to reach destination node from in one step
             if (game.getNodes().get(dest).equals(b.getA())) {
@@ -269,10 +949,7 @@ public class GraphSolver {
             temp.add(
                     this.bmgr.and(
                             this.connectionVariables[n3][i-1],
-                            this.imgr.greaterThan(
-                                    this.bridgeVariables[game.getBridges().indexOf(b)],
-                                    this.imgr.makeNumber(0)
-                            )
+                            this.atoms.positive(this.bridgeVariables[game.getBridges().indexOf(b)])
                     )
             );
         }
@@ -289,21 +966,17 @@ public class GraphSolver {
 
 
     private void printConnectionVariables(Game game, Model model) {
-        boolean[][] solution2 = new boolean[game.getNodes().size()][game.getNodes().size()];
+        boolean[][] solution2 = new boolean[game.getNodes().size()][this.depth+1];
         for (int n = 0; n < (game.getNodes().size()); n++) {
-            for (int i = 1; i < (game.getNodes().size()); i++) {
+            for (int i = 1; i <= this.depth; i++) {
                 solution2[n][i] = model.evaluate(this.connectionVariables[n][i]);
             }
         }
 
         for (int n = 0; n < (game.getNodes().size()); n++) {
-            for (int i = 1; i < (game.getNodes().size()); i++) {
+            for (int i = 1; i <= this.depth; i++) {
                 System.out.println(this.connectionVariables[n][i] + ": " + solution2[n][i]);
             }
         }
     }
 }
-
-
-
-
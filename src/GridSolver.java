@@ -1,4 +1,3 @@
-import org.sosy_lab.common.ShutdownManager;
 import org.sosy_lab.common.configuration.Configuration;
 import org.sosy_lab.common.configuration.InvalidConfigurationException;
 import org.sosy_lab.common.log.BasicLogManager;
@@ -7,29 +6,169 @@ import org.sosy_lab.java_smt.SolverContextFactory;
 import org.sosy_lab.java_smt.api.*;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
 
 public class GridSolver {
-    private final SolverContext context;
-    private final BooleanFormulaManager bmgr;
-    private final IntegerFormulaManager imgr;
+    private final SolverControl control = new SolverControl(); // Timeout, cancel and prover permits
+    private SolverContext context;
+    private BooleanFormulaManager bmgr;
+    private IntegerFormulaManager imgr;
     private NumeralFormula.IntegerFormula[][] fieldVariables;
+    private NumeralFormula.IntegerFormula[] segmentVariables; // One σ per possible bridge, only used with the segment encoding
+    private NumeralFormula.IntegerFormula[][] crossingVariables; // One κ per cell where two possible bridges cross, null elsewhere
     private BooleanFormula[][] connectionVariables;
+    private FormulaManager fmgr;
+    private AtomCache atoms;
+    private boolean instrumented = false;
+    private ConstraintReport report;
+    private FormulaStore formulaStore;
+    private boolean boundedConnectivity = false;
+    private boolean segmentEncoding = false;
+    private SolveResult lastResult;
+    private int root; // Index of the node every other node must be reachable from
+    private int depth; // Amount of steps in the γ ladder
+    private ProverEnvironment warmProver; // Kept open between puzzles, every puzzle is pushed on it and popped afterwards
+    private NumeralFormula.IntegerFormula[][] declaredFieldVariables = new NumeralFormula.IntegerFormula[0][0]; // φ i,j of the largest field so far
+    private NumeralFormula.IntegerFormula[][] declaredCrossingVariables = new NumeralFormula.IntegerFormula[0][0]; // κ row,col, null until declared
+    private final ArrayList<NumeralFormula.IntegerFormula> declaredSegmentVariables = new ArrayList<>(); // σ b at index b
+    private final HashMap<Integer, ArrayList<ArrayList<BooleanFormula>>> declaredConnectionVariables = new HashMap<>(); // Root -> γ root,n,i at [n][i-1]
 
     public GridSolver() throws InvalidConfigurationException {
+        this.createContext();
+    }
+
+    private void createContext() throws InvalidConfigurationException {
         Configuration config = Configuration.defaultConfiguration();
         LogManager logger = BasicLogManager.create(config);
-        ShutdownManager shutdown = ShutdownManager.create();
         this.context = SolverContextFactory.createSolverContext(
-                config, logger, shutdown.getNotifier(), SolverContextFactory.Solvers.SMTINTERPOL);
+                config, logger, this.control.newNotifier(), SolverContextFactory.Solvers.SMTINTERPOL);
+
+        this.fmgr = this.context.getFormulaManager();
+        this.bmgr = this.fmgr.getBooleanFormulaManager();
+        this.imgr = this.fmgr.getIntegerFormulaManager();
+        this.atoms = new AtomCache(this.imgr);
+
+        // Everything below belonged to the previous context, if any
+        this.declaredFieldVariables = new NumeralFormula.IntegerFormula[0][0];
+        this.declaredCrossingVariables = new NumeralFormula.IntegerFormula[0][0];
+        this.declaredSegmentVariables.clear();
+        this.declaredConnectionVariables.clear();
+        this.warmProver = null;
+    }
 
-        FormulaManager fmgr = this.context.getFormulaManager();
-        this.bmgr = fmgr.getBooleanFormulaManager();
-        this.imgr = fmgr.getIntegerFormulaManager();
+    // A context cannot be used anymore after a timeout or cancel, so it is replaced before the next call
+    private void resetIfShutDown() {
+        if (!this.control.isShutDown())
+            return;
+        this.context.close();
+        try {
+            this.createContext();
+        } catch (InvalidConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Closes the prover and the context, the solver cannot be used anymore afterwards
+    public void close() {
+        if (this.warmProver != null)
+            this.warmProver.close();
+        this.warmProver = null;
+        this.context.close();
+    }
+
+    // Limits every following solveGame and hasUniqueSolution call to the given time, 0 means no limit
+    public void setTimeout(long timeoutMillis) {
+        this.control.setTimeout(timeoutMillis);
+    }
+
+    // Stops the call that is running at the moment, from another thread. It ends the same way as when it runs out of time
+    // Without a running call, the next call is stopped as soon as it starts, see SolverControl.cancel
+    public void cancel() {
+        this.control.cancel();
+    }
+
+    // Drops a cancel that is still waiting for the next call, for a caller whose call never started after all
+    public void withdrawCancel() {
+        this.control.withdrawCancel();
+    }
+
+    // Limits the prover section of solveGame (asserting the constraints, the check and reading the model) to the permits of the
+    // semaphore, which can be shared between solvers. Building the constraints is not limited, null means no limit at all
+    public void setProverPermits(Semaphore proverPermits) {
+        this.control.setProverPermits(proverPermits);
+    }
+
+    // Prepares the context for a call, which ends with control.endCall
+    private void startCall() {
+        this.resetIfShutDown(); // Only a finished call can have shut the context down, a pending cancel is kept by the control
+        this.control.startCall();
+    }
+
+    // Pops a puzzle off the warm prover, unless the context was shut down and will be replaced anyway
+    private void popPuzzle(ProverEnvironment prover) {
+        if (!this.control.isShutDown())
+            prover.pop();
+    }
+
+    // With a store, solveGame writes the formula of every puzzle it builds to it and replays it from there on later runs,
+    // instead of building the constraints again. Only games parsed from a puzzle ID are stored
+    public void setFormulaStore(FormulaStore formulaStore) {
+        this.formulaStore = formulaStore;
+    }
+
+    // Encoding and γ ladder the current formula is built for, as variant in the formula store
+    private String formulaVariant() {
+        return (this.segmentEncoding ? "grid-segments" : "grid") + ",root=" + this.root + ",depth=" + this.depth;
+    }
+
+    private BooleanFormula loadFormula(Game game) {
+        if (this.formulaStore == null || game.getId() == null)
+            return null;
+        String formula = this.formulaStore.load(game.getId(), this.formulaVariant());
+        return formula == null ? null : this.fmgr.parse(formula);
+    }
+
+    private void storeFormula(Game game, BooleanFormula formula) {
+        if (this.formulaStore != null && game.getId() != null)
+            this.formulaStore.store(game.getId(), this.formulaVariant(), this.fmgr.dumpFormula(formula).toString());
+    }
+
+    // When enabled, solveGame collects a ConstraintReport with the size and build time of every constraint family
+    public void setInstrumentation(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    // Report of the last puzzle solved by solveGame, null if instrumentation is disabled
+    public ConstraintReport getLastReport() {
+        return this.report;
+    }
+
+    // Outcome of the last solveGame call, the game is only filled in if it was SOLVED
+    // hasUniqueSolution sets it as well, to TIMEOUT if it ran out of time (and returned false) and SOLVED otherwise
+    public SolveResult getLastResult() {
+        return this.lastResult;
+    }
+
+    // When enabled, the most central node is used as root and the γ ladder starts at its eccentricity instead of nodes-1 steps
+    // The ladder is deepened whenever that turns out to be too shallow, so the outcome is the same as without the option
+    // Only the search for a solution starts shallow. An unsolvable puzzle is UNSAT at every depth, so it costs about log2(nodes)
+    // extra solves, and findAlternativeSolution and hasUniqueSolution always use the full ladder for the same reason
+    public void setBoundedConnectivity(boolean boundedConnectivity) {
+        this.boundedConnectivity = boundedConnectivity;
+    }
+
+    // When enabled, every maximal empty run between two nodes (a possible bridge) gets one σ variable holding the piece that fills it,
+    // and every cell where two runs cross gets one κ variable, instead of a φ variable per cell of the field
+    // Pieces keep their cell encoding values, so the solution is still returned through fillFieldGridEncoding
+    public void setSegmentEncoding(boolean segmentEncoding) {
+        this.segmentEncoding = segmentEncoding;
     }
 
 
     public ArrayList<Long> solveGame(Game game) {
-        this.createVariables(game);
+        this.startCall();
 
         long t0 = 0;
         long constrTime = 0;
@@ -41,59 +180,141 @@ public class GridSolver {
         ArrayList<Long> times = new ArrayList<>();
 
         // Solve with SMT solver
-        Model model = null;
-        try (ProverEnvironment prover = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS)) {
-            // Add constraints
-            t0 = System.currentTimeMillis();
-
-
-            BooleanFormula validCells = this.validCellsConstraint1(game);
-//            System.out.println(validCells);
-            prover.addConstraint(validCells);
-
-            BooleanFormula neighbors = this.neighborConstraint(game);
-//            System.out.println(neighbors);
-            prover.addConstraint(neighbors);
-
-            BooleanFormula nodesSatisfied = this.nodesSatisfiedConstraint(game);
-//            System.out.println(nodesSatisfied);
-            prover.addConstraint(nodesSatisfied);
-
-            BooleanFormula nodesConnected = this.nodesConnectedConstraint(game);
-//            System.out.println(nodesConnected);
-            prover.addConstraint(nodesConnected);
+        BigInteger[][] solution = null;
+        boolean isUnsat = true;
+        boolean stopped = false; // Timed out or cancelled
+        try {
+            this.setConnectivityBounds(game);
+            while (solution == null) { // Only repeated when a bounded γ ladder turned out to be too shallow
+                this.createVariables(game);
+                this.report = this.instrumented ? new ConstraintReport(this.fmgr,
+                        "Grid encoding: " + game.getFieldSize() + "x" + game.getFieldSize() + ", " + game.getNodes().size() + " nodes, " + game.getBridges().size() + " possible bridges") : null;
+                ProverEnvironment prover = this.warmProver();
+                boolean permitted = false;
+                try {
+                    // Build constraints, the prover is only used once they are all built
+                    t0 = System.currentTimeMillis();
+
+                    ArrayList<BooleanFormula> built = new ArrayList<>();
+                    BooleanFormula stored = this.loadFormula(game); // Replayed from the formula store, if it has this puzzle
+                    if (stored != null) {
+                        built.add(stored);
+                    } else {
+                        if (this.segmentEncoding) {
+                            long tValidSegments = System.nanoTime();
+                            BooleanFormula validSegments = this.validSegmentsConstraint(game);
+                            this.record("validSegmentsConstraint", validSegments, tValidSegments);
+                            built.add(validSegments);
+
+                            this.control.shutdownIfNecessary(); // Building constraints does not check for a shutdown by itself
+                            long tCrossings = System.nanoTime();
+                            BooleanFormula crossings = this.crossingCellsConstraint(game);
+                            this.record("crossingCellsConstraint", crossings, tCrossings);
+                            built.add(crossings);
+
+                            this.control.shutdownIfNecessary();
+                            long tNodesSatisfied = System.nanoTime();
+                            BooleanFormula nodesSatisfied = this.segmentsSatisfyNodesConstraint(game);
+                            this.record("segmentsSatisfyNodesConstraint", nodesSatisfied, tNodesSatisfied);
+                            built.add(nodesSatisfied);
+                        } else {
+                            this.control.shutdownIfNecessary();
+                            long tValidCells = System.nanoTime();
+                            BooleanFormula validCells = this.validCellsConstraint1(game);
+                            this.record("validCellsConstraint1", validCells, tValidCells);
+    //                        System.out.println(validCells);
+                            built.add(validCells);
+
+                            this.control.shutdownIfNecessary();
+                            long tNeighbors = System.nanoTime();
+                            BooleanFormula neighbors = this.neighborConstraint(game);
+                            this.record("neighborConstraint", neighbors, tNeighbors);
+    //                        System.out.println(neighbors);
+                            built.add(neighbors);
+
+                            this.control.shutdownIfNecessary();
+                            long tNodesSatisfied = System.nanoTime();
+                            BooleanFormula nodesSatisfied = this.nodesSatisfiedConstraint(game);
+                            this.record("nodesSatisfiedConstraint", nodesSatisfied, tNodesSatisfied);
+    //                        System.out.println(nodesSatisfied);
+                            built.add(nodesSatisfied);
+                        }
+
+                        this.control.shutdownIfNecessary();
+                        long tNodesConnected = System.nanoTime();
+                        BooleanFormula nodesConnected = this.nodesConnectedConstraint(game);
+                        this.record("nodesConnectedConstraint", nodesConnected, tNodesConnected);
+    //                    System.out.println(nodesConnected);
+                        built.add(nodesConnected);
+                        this.storeFormula(game, this.bmgr.and(built));
+                    }
 
-            constrTime = System.currentTimeMillis() - t0; // Time it takes to construct all constraints
-            times.add(constrTime);
+                    long waiting = System.currentTimeMillis();
+                    this.control.acquireProverPermit();
+                    permitted = true;
+                    t0 += System.currentTimeMillis() - waiting; // Waiting for a permit is not construction time
+                    prover.push();
+                    for (BooleanFormula constraint : built) {
+                        prover.addConstraint(constraint);
+                    }
 
-            t1 = System.currentTimeMillis();
-            boolean isUnsat = prover.isUnsat();
-            unsatTime = System.currentTimeMillis() - t1; // Time it takes to verify that the puzzle is unsatisfiable
-            times.add(unsatTime);
+                    constrTime += System.currentTimeMillis() - t0; // Time it takes to construct all constraints
+
+                    t1 = System.currentTimeMillis();
+                    isUnsat = prover.isUnsat();
+                    unsatTime += System.currentTimeMillis() - t1; // Time it takes to verify that the puzzle is unsatisfiable
+
+                    if (!isUnsat) {
+                        t2 = System.currentTimeMillis();
+                        Model model = prover.getModel();
+                        satTime += System.currentTimeMillis() - t2; // Time it takes to retrieve the solution model
+
+                        // Retrieve solution, before the puzzle is popped from the prover
+                        solution = new BigInteger[game.getFieldSize()][game.getFieldSize()];
+                        if (this.segmentEncoding) {
+                            this.fillSegmentSolution(game, model, solution);
+                        } else {
+                            for (int i = 1; i < game.getFieldSize()+1; i++) {
+                                for (int j = 1; j < game.getFieldSize()+1; j++) {
+                                    solution[i-1][j-1] = model.evaluate(this.fieldVariables[i][j]);
+                                }
+                            }
+                        }
+                    }
+                    totalTime += System.currentTimeMillis() - t1; // Total it takes to verify and retrieve solution (unsatTime + satTime)
+
+                } catch (SolverException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    stopped = true;
+                } finally {
+                    if (permitted) { // Nothing was pushed without a permit
+                        this.popPuzzle(prover);
+                        this.control.releaseProverPermit();
+                    }
+                }
 
-            if (!isUnsat) {
-                t2 = System.currentTimeMillis();
-                model = prover.getModel();
-                satTime = System.currentTimeMillis() - t2; // Time it takes to retrieve the solution model
-                times.add(satTime);
+                if (stopped || (solution == null && !this.deepenConnectivityBounds(game)))
+                    break; // Out of time, or unsatisfiable even with the full γ ladder
             }
-            totalTime = System.currentTimeMillis() - t1; // Total it takes to verify and retrieve solution (unsatTime + satTime)
-            times.add(totalTime);
-
-        } catch (SolverException | InterruptedException e) {
-            throw new RuntimeException(e);
+        } finally {
+            this.control.endCall();
         }
-
-        assert model != null;
-
-        // Retrieve solution
-        BigInteger[][] solution = new BigInteger[game.getFieldSize()][game.getFieldSize()];
-
-        for (int i = 1; i < game.getFieldSize()+1; i++) {
-            for (int j = 1; j < game.getFieldSize()+1; j++) {
-                solution[i-1][j-1] = model.evaluate(this.fieldVariables[i][j]);
-            }
+        times.add(constrTime);
+        times.add(unsatTime);
+        if (!isUnsat)
+            times.add(satTime);
+        times.add(totalTime);
+
+        if (stopped) { // Game is left as it was
+            this.lastResult = SolveResult.TIMEOUT;
+            return times;
+        }
+        if (solution == null) { // Unsolvable puzzle, game is left as it was
+            this.lastResult = SolveResult.UNSOLVABLE;
+            return times;
         }
+        this.lastResult = SolveResult.SOLVED;
 
         game.fillFieldGridEncoding(solution);
 
@@ -102,33 +323,82 @@ public class GridSolver {
         return times;
     }
 
+    // Adds a constraint family to the report (if instrumented), start is the System.nanoTime() before building it
+    private void record(String family, BooleanFormula constraint, long start) {
+        long buildTime = System.nanoTime() - start;
+        if (this.report != null)
+            this.report.add(family, constraint, buildTime);
+    }
+
     public Boolean hasUniqueSolution (Game game) {
-        this.createVariables(game);
-
-        try (ProverEnvironment prover = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS)) {
-            BigInteger[][] encoding = game.getFieldEncoding();
-            ArrayList<BooleanFormula> solList = new ArrayList<>();
-
-            for (int i = 0; i < this.fieldVariables.length; i++) {
-                for (int j = 0; j < this.fieldVariables.length; j++) {
-                    if (i == 0 || j == 0 || i == game.getFieldSize()+1 || j == game.getFieldSize()+1)
-                        solList.add(this.imgr.equal(this.fieldVariables[i][j], this.imgr.makeNumber(0)));
-                    else
-                        solList.add(this.imgr.equal(this.fieldVariables[i][j], this.imgr.makeNumber(encoding[i-1][j-1])));
-                }
-            }
-            BooleanFormula isNotFirstSolution = this.bmgr.not(this.bmgr.and(solList));
+        return this.findAlternativeSolution(game) == null && this.lastResult != SolveResult.TIMEOUT; // Uniqueness was not shown on a timeout
+    }
 
-            // Add constraints
-            prover.addConstraint(isNotFirstSolution);
-            prover.addConstraint(this.validCellsConstraint1(game));
-            prover.addConstraint(this.neighborConstraint(game));
-            prover.addConstraint(this.nodesSatisfiedConstraint(game));
-            prover.addConstraint(this.nodesConnectedConstraint(game));
+    // Returns a solution other than the bridge weights in game as bridge weights (indices match game.bridges), or null if there is
+    // none or on a timeout. The weights are read from the segment variables or from the first cell of every possible bridge
+    public ArrayList<BigInteger> findAlternativeSolution(Game game) {
+        this.startCall();
+        this.setConnectivityBounds(game);
+        this.depth = Math.max(0, game.getNodes().size()-1); // No other solution is UNSAT at every bounded depth, deepening would only repeat the query
+
+        try {
+            this.createVariables(game);
+            ProverEnvironment prover = this.warmProver();
+            try {
+                prover.push();
+                ArrayList<BooleanFormula> solList = new ArrayList<>();
+
+                if (this.segmentEncoding) {
+                    for (int b = 0; b < this.segmentVariables.length; b++) { // The crossing cells follow from the segments
+                        solList.add(this.atoms.equal(this.segmentVariables[b], this.pieceOf(game.getBridges().get(b), game.getBridges().get(b).getWeight().intValue())));
+                    }
+                } else {
+                    BigInteger[][] encoding = game.getFieldEncoding();
+                    for (int i = 0; i < this.fieldVariables.length; i++) {
+                        for (int j = 0; j < this.fieldVariables.length; j++) {
+                            if (i == 0 || j == 0 || i == game.getFieldSize()+1 || j == game.getFieldSize()+1)
+                                solList.add(this.atoms.equal(this.fieldVariables[i][j], 0));
+                            else
+                                solList.add(this.atoms.equal(this.fieldVariables[i][j], encoding[i-1][j-1]));
+                        }
+                    }
+                }
+                BooleanFormula isNotFirstSolution = this.bmgr.not(this.bmgr.and(solList));
+
+                // Add constraints
+                prover.addConstraint(isNotFirstSolution);
+                if (this.segmentEncoding) {
+                    prover.addConstraint(this.validSegmentsConstraint(game));
+                    prover.addConstraint(this.crossingCellsConstraint(game));
+                    prover.addConstraint(this.segmentsSatisfyNodesConstraint(game));
+                } else {
+                    prover.addConstraint(this.validCellsConstraint1(game));
+                    prover.addConstraint(this.neighborConstraint(game));
+                    prover.addConstraint(this.nodesSatisfiedConstraint(game));
+                }
+                prover.addConstraint(this.nodesConnectedConstraint(game));
 
-            return prover.isUnsat();
-        } catch (SolverException | InterruptedException e) {
-            throw new RuntimeException(e);
+                if (!prover.isUnsat()) {
+                    Model model = prover.getModel();
+                    ArrayList<BigInteger> alternative = new ArrayList<>();
+                    for (int b = 0; b < game.getBridges().size(); b++) {
+                        alternative.add(this.bridgeWeight(game.getBridges().get(b), b, model));
+                    }
+                    this.lastResult = SolveResult.SOLVED;
+                    return alternative;
+                }
+                this.lastResult = SolveResult.SOLVED;
+                return null;
+            } catch (SolverException e) {
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                this.lastResult = SolveResult.TIMEOUT;
+                return null;
+            } finally {
+                this.popPuzzle(prover);
+            }
+        } finally {
+            this.control.endCall();
         }
     }
 
@@ -143,24 +413,104 @@ public class GridSolver {
 
 
     private void createVariables(Game game) {
-        // Create variables for each grid cell (each cell can be empty, a node, or a bridge piece)
-        this.fieldVariables = new NumeralFormula.IntegerFormula[game.getFieldSize()+2][game.getFieldSize()+2];
-        for (int i = 0; i < game.getFieldSize()+2; i++) { // +2 to introduce a boundary around the game for empty cells
-            for (int j = 0; j < game.getFieldSize()+2; j++) { // +2 to introduce a boundary around the game for empty cells
-                this.fieldVariables[i][j] = this.imgr.makeVariable("φ" + i + "," + j); // φi,j represents field i-1,j-1 in the actual game, because of the boundary
+        // Variables are only declared once per solver, a puzzle of the same or a smaller size reuses the declarations of earlier ones
+        if (this.segmentEncoding) {
+            // Create a variable for each possible bridge, holding the piece that fills all cells between its endpoints
+            this.segmentVariables = new NumeralFormula.IntegerFormula[game.getBridges().size()];
+            for (int b = this.declaredSegmentVariables.size(); b < game.getBridges().size(); b++) {
+                this.declaredSegmentVariables.add(this.imgr.makeVariable("σ" + b)); // σb matches the index in game.bridges
+            }
+            for (int b = 0; b < game.getBridges().size(); b++) {
+                this.segmentVariables[b] = this.declaredSegmentVariables.get(b);
+            }
+
+            // Create a variable for each cell two possible bridges share, which holds the piece of whichever one is built
+            if (this.declaredCrossingVariables.length < game.getFieldSize())
+                this.declaredCrossingVariables = this.grow(this.declaredCrossingVariables, game.getFieldSize());
+            this.crossingVariables = new NumeralFormula.IntegerFormula[game.getFieldSize()][game.getFieldSize()];
+            for (Bridge h : game.getBridges()) {
+                for (Bridge v : game.getBridges()) {
+                    if (h.getDirection() == Bridge.Direction.HORIZONTAL && h.crosses(v)) {
+                        int row = h.getA().getRow();
+                        int col = v.getA().getCol();
+                        if (this.declaredCrossingVariables[row][col] == null)
+                            this.declaredCrossingVariables[row][col] = this.imgr.makeVariable("κ" + row + "," + col);
+                        this.crossingVariables[row][col] = this.declaredCrossingVariables[row][col];
+                    }
+                }
+            }
+        } else {
+            // Create variables for each grid cell (each cell can be empty, a node, or a bridge piece)
+            if (this.declaredFieldVariables.length < game.getFieldSize()+2) { // +2 to introduce a boundary around the game for empty cells
+                this.declaredFieldVariables = this.grow(this.declaredFieldVariables, game.getFieldSize()+2);
+                for (int i = 0; i < game.getFieldSize()+2; i++) {
+                    for (int j = 0; j < game.getFieldSize()+2; j++) {
+                        if (this.declaredFieldVariables[i][j] == null)
+                            this.declaredFieldVariables[i][j] = this.imgr.makeVariable("φ" + i + "," + j); // φi,j represents field i-1,j-1 in the actual game, because of the boundary
+                    }
+                }
+            }
+            this.fieldVariables = new NumeralFormula.IntegerFormula[game.getFieldSize()+2][game.getFieldSize()+2];
+            for (int i = 0; i < game.getFieldSize()+2; i++) {
+                System.arraycopy(this.declaredFieldVariables[i], 0, this.fieldVariables[i], 0, game.getFieldSize()+2);
             }
         }
 
-        // Create variables for connectedness of each node pair in AT MOST i amount of steps, where i is at most edges-1
-        // Indices i and j of these variables match directly with the indices in game.nodes
-        this.connectionVariables = new BooleanFormula[game.getNodes().size()][game.getNodes().size()];
+        // Create variables for connectedness of the root and each node in AT MOST i amount of steps, where i is at most edges-1
+        // The first index matches directly with the indices in game.nodes, the second is the amount of steps up to the ladder depth
+        ArrayList<ArrayList<BooleanFormula>> declared = this.declaredConnectionVariables.computeIfAbsent(this.root, r -> new ArrayList<>());
+        this.connectionVariables = new BooleanFormula[game.getNodes().size()][this.depth+1];
         for (int n = 0; n < (game.getNodes().size()); n++) {
-            for (int i = 1; i < (game.getNodes().size()); i++) {
-                this.connectionVariables[n][i] = this.bmgr.makeVariable("γ0," + n + "," + i);
+            if (n == declared.size())
+                declared.add(new ArrayList<>());
+            for (int i = declared.get(n).size() + 1; i <= this.depth; i++) {
+                declared.get(n).add(this.bmgr.makeVariable("γ" + this.root + "," + n + "," + i));
+            }
+            for (int i = 1; i <= this.depth; i++) {
+                this.connectionVariables[n][i] = declared.get(n).get(i-1);
             }
         }
     }
 
+    // Copies square table of declared variables into a larger one, the new entries are left null
+    private NumeralFormula.IntegerFormula[][] grow(NumeralFormula.IntegerFormula[][] declared, int size) {
+        NumeralFormula.IntegerFormula[][] grown = new NumeralFormula.IntegerFormula[size][size];
+        for (int i = 0; i < declared.length; i++) {
+            System.arraycopy(declared[i], 0, grown[i], 0, declared.length);
+        }
+        return grown;
+    }
+
+    // Prover used by solveGame and hasUniqueSolution, opened on first use
+    private ProverEnvironment warmProver() {
+        if (this.warmProver == null)
+            this.warmProver = this.context.newProverEnvironment(SolverContext.ProverOptions.GENERATE_MODELS);
+        return this.warmProver;
+    }
+
+    // Chooses the root node and depth of the γ ladder, which are node 0 and nodes-1 steps unless connectivity is bounded
+    // Every solution needs at least the root's eccentricity in the possible-bridge graph as depth, so that is where a bounded ladder starts
+    private void setConnectivityBounds(Game game) {
+        this.root = 0;
+        this.depth = Math.max(0, game.getNodes().size()-1);
+        if (this.boundedConnectivity && game.getNodes().size() > 1) {
+            int[] eccentricities = game.getEccentricities();
+            for (int n = 1; n < eccentricities.length; n++) {
+                if (eccentricities[n] < eccentricities[this.root]) // Most central node has the lowest eccentricity
+                    this.root = n;
+            }
+            this.depth = Math.max(1, Math.min(eccentricities[this.root], this.depth));
+        }
+    }
+
+    // Doubles the depth of the γ ladder after an unsatisfiable attempt, returns false if the full depth was already used
+    private boolean deepenConnectivityBounds(Game game) {
+        if (this.depth >= game.getNodes().size()-1)
+            return false;
+        this.depth = Math.min(2 * this.depth, game.getNodes().size()-1);
+        return true;
+    }
+
 
     // Cells can either be empty, single horizontal, double horizontal, single vertical, double vertical, or nodes respectively encoded as 0, 1, 2, 3, 4, 5
     // Corners may not be bridge pieces, edges may only be bridge pieces along the axis. Only cells that have same coordinates as nodes list may be nodes
@@ -175,21 +525,20 @@ public class GridSolver {
                 if (row == 0 || col == 0 || row == game.getFieldSize()+1 || col == game.getFieldSize()+1) {
                     validCellsList.add(
                             this.bmgr.and( // Force outer bound to be empty in any case
-                                    this.imgr.equal(this.fieldVariables[row][col], this.imgr.makeNumber(0))
+                                    this.atoms.equal(this.fieldVariables[row][col], 0)
                             )
                     );
                 } else {
                     // Only cells with same coords as nodes list may be nodes
-                    Node n = new Node(row-1, col-1, 0);
-                    if (game.getNodes().contains(n)) {
+                    if (game.isNodeAt(row-1, col-1)) {
                         validCellsList.add(
-                                this.imgr.equal(this.fieldVariables[row][col], this.imgr.makeNumber(5))
+                                this.atoms.equal(this.fieldVariables[row][col], 5)
                         );
                     } else { // All other cells can be other pieces
                         validCellsList.add(
                                 this.bmgr.and(
-                                        this.imgr.greaterOrEquals(this.fieldVariables[row][col], this.imgr.makeNumber(0)),
-                                        this.imgr.lessOrEquals(this.fieldVariables[row][col], this.imgr.makeNumber(4))
+                                        this.imgr.greaterOrEquals(this.fieldVariables[row][col], this.atoms.number(0)),
+                                        this.imgr.lessOrEquals(this.fieldVariables[row][col], this.atoms.number(4))
                                 )
                         );
                     }
@@ -213,25 +562,24 @@ public class GridSolver {
                 if (row == 0 || col == 0 || row == game.getFieldSize()+1 || col == game.getFieldSize()+1) {
                     validCellsList.add(
                             this.bmgr.and( // Force outer bound to be empty in any case
-                                    this.imgr.equal(this.fieldVariables[row][col], this.imgr.makeNumber(0))
+                                    this.atoms.equal(this.fieldVariables[row][col], 0)
                             )
                     );
                 } else {
                     // Only cells with same coords as nodes list may be nodes
-                    Node n = new Node(row-1, col-1, 0);
-                    if (game.getNodes().contains(n)) {
+                    if (game.isNodeAt(row-1, col-1)) {
                         validCellsList.add(
-                                this.imgr.equal(this.fieldVariables[row][col], this.imgr.makeNumber(5))
+                                this.atoms.equal(this.fieldVariables[row][col], 5)
                         );
                     } else { // All other cells can be other pieces AND SHOULD NOT BE A NODE
                         validCellsList.add(
                                 this.bmgr.and(
-                                        this.imgr.greaterOrEquals(this.fieldVariables[row][col], this.imgr.makeNumber(0)),
-                                        this.imgr.lessOrEquals(this.fieldVariables[row][col], this.imgr.makeNumber(4))
+                                        this.imgr.greaterOrEquals(this.fieldVariables[row][col], this.atoms.number(0)),
+                                        this.imgr.lessOrEquals(this.fieldVariables[row][col], this.atoms.number(4))
                                 )
                         );
                         validCellsList.add( // Adding this proposition explicitly significantly improves speed (Only in old encoding without boundaries?)
-                                this.bmgr.not(this.imgr.equal(this.fieldVariables[row][col], this.imgr.makeNumber(5)))
+                                this.bmgr.not(this.atoms.equal(this.fieldVariables[row][col], 5))
                         );
                     }
                 }
@@ -249,7 +597,7 @@ public class GridSolver {
                 for (int p = 1; p <= 4; p++) {
                     neighborList.add(
                             this.bmgr.implication(
-                                    this.imgr.equal(this.fieldVariables[i][j], this.imgr.makeNumber(p)),
+                                    this.atoms.equal(this.fieldVariables[i][j], p),
                                     this.bmgr.and(
                                             getNeighborRestrictionList(i, j, p)
                                     )
@@ -267,27 +615,27 @@ public class GridSolver {
         if (piece == 1 || piece == 2) { // ─ or ═
             neighborRestrictionList.add(
                     this.bmgr.or(
-                            this.imgr.equal(this.fieldVariables[i][j-1], this.imgr.makeNumber(piece)), // same piece west
-                            this.imgr.equal(this.fieldVariables[i][j-1], this.imgr.makeNumber(5)) // cell west
+                            this.atoms.equal(this.fieldVariables[i][j-1], piece), // same piece west
+                            this.atoms.equal(this.fieldVariables[i][j-1], 5) // cell west
                     )
             );
             neighborRestrictionList.add(
                     this.bmgr.or(
-                            this.imgr.equal(this.fieldVariables[i][j+1], this.imgr.makeNumber(piece)), // same piece east
-                            this.imgr.equal(this.fieldVariables[i][j+1], this.imgr.makeNumber(5)) // cell east
+                            this.atoms.equal(this.fieldVariables[i][j+1], piece), // same piece east
+                            this.atoms.equal(this.fieldVariables[i][j+1], 5) // cell east
                     )
             );
         } else if (piece == 3 || piece == 4) { // | or ‖
             neighborRestrictionList.add(
                     this.bmgr.or(
-                            this.imgr.equal(this.fieldVariables[i-1][j], this.imgr.makeNumber(piece)), // same piece north
-                            this.imgr.equal(this.fieldVariables[i-1][j], this.imgr.makeNumber(5)) // cell north
+                            this.atoms.equal(this.fieldVariables[i-1][j], piece), // same piece north
+                            this.atoms.equal(this.fieldVariables[i-1][j], 5) // cell north
                     )
             );
             neighborRestrictionList.add(
                     this.bmgr.or(
-                            this.imgr.equal(this.fieldVariables[i+1][j], this.imgr.makeNumber(piece)), // same piece south
-                            this.imgr.equal(this.fieldVariables[i+1][j], this.imgr.makeNumber(5)) // cell south
+                            this.atoms.equal(this.fieldVariables[i+1][j], piece), // same piece south
+                            this.atoms.equal(this.fieldVariables[i+1][j], 5) // cell south
                     )
             );
         }
@@ -304,72 +652,48 @@ public class GridSolver {
                 if (dir == Direction.NORTH)
                     sumList.add(
                             this.bmgr.ifThenElse(
-                                    this.imgr.equal(
-                                            this.fieldVariables[n.getRow()][n.getCol()+1],
-                                            this.imgr.makeNumber(3)
-                                    ),
-                                    this.imgr.makeNumber(1),
+                                    this.atoms.equal(this.fieldVariables[n.getRow()][n.getCol()+1], 3),
+                                    this.atoms.number(1),
                                     this.bmgr.ifThenElse(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[n.getRow()][n.getCol()+1],
-                                                    this.imgr.makeNumber(4)
-                                            ),
-                                            this.imgr.makeNumber(2),
-                                            this.imgr.makeNumber(0)
+                                            this.atoms.equal(this.fieldVariables[n.getRow()][n.getCol()+1], 4),
+                                            this.atoms.number(2),
+                                            this.atoms.number(0)
                                     )
                             )
                     );
                 else if (dir == Direction.EAST)
                     sumList.add(
                             this.bmgr.ifThenElse(
-                                    this.imgr.equal(
-                                            this.fieldVariables[n.getRow()+1][n.getCol()+2],
-                                            this.imgr.makeNumber(1)
-                                    ),
-                                    this.imgr.makeNumber(1),
+                                    this.atoms.equal(this.fieldVariables[n.getRow()+1][n.getCol()+2], 1),
+                                    this.atoms.number(1),
                                     this.bmgr.ifThenElse(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[n.getRow()+1][n.getCol()+2],
-                                                    this.imgr.makeNumber(2)
-                                            ),
-                                            this.imgr.makeNumber(2),
-                                            this.imgr.makeNumber(0)
+                                            this.atoms.equal(this.fieldVariables[n.getRow()+1][n.getCol()+2], 2),
+                                            this.atoms.number(2),
+                                            this.atoms.number(0)
                                     )
                             )
                     );
                 else if (dir == Direction.SOUTH)
                     sumList.add(
                             this.bmgr.ifThenElse(
-                                    this.imgr.equal(
-                                            this.fieldVariables[n.getRow()+2][n.getCol()+1],
-                                            this.imgr.makeNumber(3)
-                                    ),
-                                    this.imgr.makeNumber(1),
+                                    this.atoms.equal(this.fieldVariables[n.getRow()+2][n.getCol()+1], 3),
+                                    this.atoms.number(1),
                                     this.bmgr.ifThenElse(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[n.getRow()+2][n.getCol()+1],
-                                                    this.imgr.makeNumber(4)
-                                            ),
-                                            this.imgr.makeNumber(2),
-                                            this.imgr.makeNumber(0)
+                                            this.atoms.equal(this.fieldVariables[n.getRow()+2][n.getCol()+1], 4),
+                                            this.atoms.number(2),
+                                            this.atoms.number(0)
                                     )
                             )
                     );
                 else if (dir == Direction.WEST)
                     sumList.add(
                             this.bmgr.ifThenElse(
-                                    this.imgr.equal(
-                                            this.fieldVariables[n.getRow()+1][n.getCol()],
-                                            this.imgr.makeNumber(1)
-                                    ),
-                                    this.imgr.makeNumber(1),
+                                    this.atoms.equal(this.fieldVariables[n.getRow()+1][n.getCol()], 1),
+                                    this.atoms.number(1),
                                     this.bmgr.ifThenElse(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[n.getRow()+1][n.getCol()],
-                                                    this.imgr.makeNumber(2)
-                                            ),
-                                            this.imgr.makeNumber(2),
-                                            this.imgr.makeNumber(0)
+                                            this.atoms.equal(this.fieldVariables[n.getRow()+1][n.getCol()], 2),
+                                            this.atoms.number(2),
+                                            this.atoms.number(0)
                                     )
                             )
                     );
@@ -377,7 +701,7 @@ public class GridSolver {
             nodesSatisfiedList.add(
                     this.imgr.equal(
                             this.imgr.sum(sumList),
-                            this.imgr.makeNumber(n.getValue())
+                            this.atoms.number(n.getValue())
                     )
             );
         }
@@ -385,19 +709,173 @@ public class GridSolver {
     }
 
 
+    // Segment encoding: a possible bridge is empty or filled with a single or double piece along its own axis
+    // Nodes next to each other have no cell in between to carry a piece, so like in the cell encoding they cannot be bridged
+    private BooleanFormula validSegmentsConstraint(Game game) {
+        ArrayList<BooleanFormula> validSegmentsList = new ArrayList<>();
+        for (int b = 0; b < this.segmentVariables.length; b++) {
+            Bridge bridge = game.getBridges().get(b);
+            boolean hasCells = bridge.getDirection() == Bridge.Direction.HORIZONTAL
+                    ? bridge.getB().getCol() - bridge.getA().getCol() > 1
+                    : bridge.getB().getRow() - bridge.getA().getRow() > 1;
+            if (hasCells) {
+                validSegmentsList.add(
+                        this.bmgr.or(
+                                this.atoms.equal(this.segmentVariables[b], 0),
+                                this.atoms.equal(this.segmentVariables[b], this.pieceOf(bridge, 1)),
+                                this.atoms.equal(this.segmentVariables[b], this.pieceOf(bridge, 2))
+                        )
+                );
+            } else {
+                validSegmentsList.add(this.atoms.equal(this.segmentVariables[b], 0));
+            }
+        }
+        return this.bmgr.and(validSegmentsList);
+    }
+
+    // Segment encoding: a crossing cell holds the piece of the horizontal or the vertical segment through it, or is empty if neither is built
+    // Horizontal and vertical pieces have different values, so at most one of the two segments can be built
+    private BooleanFormula crossingCellsConstraint(Game game) {
+        ArrayList<BooleanFormula> crossingList = new ArrayList<>();
+        for (int h = 0; h < this.segmentVariables.length; h++) {
+            for (int v = 0; v < this.segmentVariables.length; v++) {
+                Bridge horizontal = game.getBridges().get(h);
+                Bridge vertical = game.getBridges().get(v);
+                if (horizontal.getDirection() == Bridge.Direction.HORIZONTAL && horizontal.crosses(vertical)) {
+                    NumeralFormula.IntegerFormula crossing = this.crossingVariables[horizontal.getA().getRow()][vertical.getA().getCol()];
+                    crossingList.add(this.bmgr.implication(this.atoms.positive(this.segmentVariables[h]), this.imgr.equal(crossing, this.segmentVariables[h])));
+                    crossingList.add(this.bmgr.implication(this.atoms.positive(this.segmentVariables[v]), this.imgr.equal(crossing, this.segmentVariables[v])));
+                    crossingList.add(
+                            this.bmgr.implication(
+                                    this.bmgr.and(this.atoms.equal(this.segmentVariables[h], 0), this.atoms.equal(this.segmentVariables[v], 0)),
+                                    this.atoms.equal(crossing, 0)
+                            )
+                    );
+                }
+            }
+        }
+        return this.bmgr.and(crossingList);
+    }
+
+    // Segment encoding: the segments ending in a node must add up to its value
+    private BooleanFormula segmentsSatisfyNodesConstraint(Game game) {
+        ArrayList<ArrayList<NumeralFormula.IntegerFormula>> sumLists = new ArrayList<>(); // Weights of the segments per node
+        for (int n = 0; n < game.getNodes().size(); n++) {
+            sumLists.add(new ArrayList<>());
+        }
+        for (int b = 0; b < this.segmentVariables.length; b++) {
+            Bridge bridge = game.getBridges().get(b);
+            NumeralFormula.IntegerFormula weight = this.bmgr.ifThenElse(
+                    this.atoms.equal(this.segmentVariables[b], this.pieceOf(bridge, 1)),
+                    this.atoms.number(1),
+                    this.bmgr.ifThenElse(
+                            this.atoms.equal(this.segmentVariables[b], this.pieceOf(bridge, 2)),
+                            this.atoms.number(2),
+                            this.atoms.number(0)
+                    )
+            );
+            sumLists.get(game.getNodeIndexAt(bridge.getA().getRow(), bridge.getA().getCol())).add(weight);
+            sumLists.get(game.getNodeIndexAt(bridge.getB().getRow(), bridge.getB().getCol())).add(weight);
+        }
+
+        ArrayList<BooleanFormula> nodesSatisfiedList = new ArrayList<>();
+        for (int n = 0; n < game.getNodes().size(); n++) {
+            nodesSatisfiedList.add(
+                    this.imgr.equal(
+                            this.imgr.sum(sumLists.get(n)),
+                            this.atoms.number(game.getNodes().get(n).getValue())
+                    )
+            );
+        }
+        return this.bmgr.and(nodesSatisfiedList);
+    }
+
+    // Weight of a possible bridge in a model, from its segment variable or from the cell next to its endpoint A
+    // Adjacent nodes have no cell in between and never get a bridge
+    private BigInteger bridgeWeight(Bridge bridge, int b, Model model) {
+        int piece;
+        if (this.segmentEncoding) {
+            piece = model.evaluate(this.segmentVariables[b]).intValue();
+        } else if (bridge.getDirection() == Bridge.Direction.HORIZONTAL) {
+            if (bridge.getB().getCol() - bridge.getA().getCol() < 2)
+                return BigInteger.ZERO;
+            piece = model.evaluate(this.fieldVariables[bridge.getA().getRow()+1][bridge.getA().getCol()+2]).intValue(); // +1 for the boundary
+        } else {
+            if (bridge.getB().getRow() - bridge.getA().getRow() < 2)
+                return BigInteger.ZERO;
+            piece = model.evaluate(this.fieldVariables[bridge.getA().getRow()+2][bridge.getA().getCol()+1]).intValue();
+        }
+        for (int weight = 1; weight <= 2; weight++) {
+            if (piece == this.pieceOf(bridge, weight))
+                return BigInteger.valueOf(weight);
+        }
+        return BigInteger.ZERO; // A piece of the other direction belongs to a crossing bridge
+    }
+
+    // Cell encoding value of a bridge piece with the given weight: 1 or 2 for horizontal bridges, 3 or 4 for vertical ones
+    private int pieceOf(Bridge bridge, int weight) {
+        if (weight == 0 || bridge.getDirection() == Bridge.Direction.HORIZONTAL)
+            return weight;
+        return weight + 2;
+    }
+
+    // Segment encoding: writes the model into a cell encoded solution, every segment fills the cells between its endpoints
+    private void fillSegmentSolution(Game game, Model model, BigInteger[][] solution) {
+        for (BigInteger[] row : solution) {
+            Arrays.fill(row, BigInteger.ZERO);
+        }
+        for (Node n : game.getNodes()) {
+            solution[n.getRow()][n.getCol()] = BigInteger.valueOf(5);
+        }
+        for (int b = 0; b < this.segmentVariables.length; b++) {
+            Bridge bridge = game.getBridges().get(b);
+            BigInteger piece = model.evaluate(this.segmentVariables[b]);
+            if (piece.signum() == 0)
+                continue;
+            if (bridge.getDirection() == Bridge.Direction.HORIZONTAL) {
+                for (int col = bridge.getA().getCol() + 1; col < bridge.getB().getCol(); col++) {
+                    solution[bridge.getA().getRow()][col] = piece;
+                }
+            } else {
+                for (int row = bridge.getA().getRow() + 1; row < bridge.getB().getRow(); row++) {
+                    solution[row][bridge.getA().getCol()] = piece;
+                }
+            }
+        }
+    }
+
+    // Whether bridge b is built, seen from the cell next to endpoint A (or next to B if fromA is false)
+    // The neighbor constraint makes both sides agree in the cell encoding, the segment encoding only has a single variable
+    private BooleanFormula bridgePresent(Game game, Bridge b, boolean fromA) {
+        if (this.segmentEncoding)
+            return this.atoms.positive(this.segmentVariables[game.getBridges().indexOf(b)]);
+        if (b.getDirection() == Bridge.Direction.HORIZONTAL) {
+            NumeralFormula.IntegerFormula cell = fromA
+                    ? this.fieldVariables[b.getA().getRow()+1][b.getA().getCol()+2] // East of A
+                    : this.fieldVariables[b.getB().getRow()+1][b.getB().getCol()]; // West of B
+            return this.bmgr.or(this.atoms.equal(cell, 1), this.atoms.equal(cell, 2));
+        } else {
+            NumeralFormula.IntegerFormula cell = fromA
+                    ? this.fieldVariables[b.getA().getRow()+2][b.getA().getCol()+1] // South of A
+                    : this.fieldVariables[b.getB().getRow()][b.getB().getCol()+1]; // North of B
+            return this.bmgr.or(this.atoms.equal(cell, 3), this.atoms.equal(cell, 4));
+        }
+    }
+
+
     // Constraint 6: Everything is strongly connected
     BooleanFormula nodesConnectedConstraint(Game game) {
         ArrayList<BooleanFormula> everythingConnectedList = new ArrayList<>();
         for (int dest = 0; dest < game.getNodes().size(); dest++) {
-            for (int i = 1; i < game.getNodes().size(); i++) {
-                if (0 == dest) { // γ0,0,i <=> True
+            for (int i = 1; i <= this.depth; i++) {
+                if (this.root == dest) { // γr,r,i <=> True, with r the root
                     everythingConnectedList.add(this.areNodesConnectedTrue(dest, i));
-                } else if (i == 1) { // γ0,2,1 <=> x1  or  γ0,3,1 <=> False
+                } else if (i == 1) { // γr,2,1 <=> x1  or  γr,3,1 <=> False
                     everythingConnectedList.add(this.areNodesConnectedInOneStep(dest, game));
-                } else { // γ0,3,2 <=> γ0,3,1 \/ (γ0,1,1 /\ x2) \/ (γ0,2,1 /\ x3)
+                } else { // γr,3,2 <=> γr,3,1 \/ (γr,1,1 /\ x2) \/ (γr,2,1 /\ x3)
                     everythingConnectedList.add(this.areNodesConnectedInISteps(dest, i, game));
                 }
-                if (i == game.getNodes().size()-1) { // γ0,x,n-1 <=> True
+                if (i == this.depth) { // γr,x,depth <=> True, where depth is n-1 or the bounded depth
                     everythingConnectedList.add(this.areNodesConnectedTrue(dest, i));
                 }
             }
@@ -405,129 +883,52 @@ public class GridSolver {
         return this.bmgr.and(everythingConnectedList);
     }
 
-    // Set a γ to true (if 0 == destination (vacuously) or if γx,y,n-1 (force connectedness))
+    // Set a γ to true (if root == destination (vacuously) or if γx,y,n-1 (force connectedness))
     private BooleanFormula areNodesConnectedTrue(int dest, int i) {
         return this.connectionVariables[dest][i];
     }
 
     // Set a γ variable equivalent to a direct bridge or to false if not applicable
-    private BooleanFormula areNodesConnectedInOneStep(int dest, Game game) { // dest is located at [row+1][col+1] in fieldvariables, so all fieldVariables +1
+    private BooleanFormula areNodesConnectedInOneStep(int dest, Game game) {
         ArrayList<Bridge> neighbors = game.getBridgesFrom(game.getNodes().get(dest)); // Retrieve bridges connected to destination node
         for (Bridge b : neighbors) {
-            if (b.getA().equals(game.getNodes().get(0)) && b.getA().getRow() == b.getB().getRow()){ // Only need to check one direction since node 0 is always in top left
-                // If node 0 and destination node form the two bridge endpoints of the adjacent horizontal bridge
-                return this.bmgr.equivalence( // Connected in 1 <=> Hbridge should exist
-                        this.connectionVariables[dest][1],
-                        this.bmgr.or(
-                                this.imgr.equal(
-                                        this.fieldVariables[b.getA().getRow()+1][b.getA().getCol()+2],
-                                        this.imgr.makeNumber(1)
-                                ),
-                                this.imgr.equal(
-                                        this.fieldVariables[b.getA().getRow()+1][b.getA().getCol()+2],
-                                        this.imgr.makeNumber(2)
-                                )
-                        )
-                );
-            } else if (b.getA().equals(game.getNodes().get(0)) && b.getA().getCol() == b.getB().getCol()){ // Only need to check one direction since node 0 is always in top left
-                // If node 0 and destination node form the two bridge endpoints of the adjacent vertical bridge
+            boolean fromRoot = b.getA().equals(game.getNodes().get(this.root)) || b.getB().equals(game.getNodes().get(this.root)); // Root can be either endpoint, the other one is destination
+            if (fromRoot) { // The cell next to A belongs to the bridge regardless of which endpoint is root
+                // If root and destination node form the two bridge endpoints of the adjacent bridge
                 return this.bmgr.equivalence( // Connected in 1 <=> bridge should exist
                         this.connectionVariables[dest][1],
-                        this.bmgr.or(
-                                this.imgr.equal(
-                                        this.fieldVariables[b.getA().getRow()+2][b.getA().getCol()+1],
-                                        this.imgr.makeNumber(3)
-                                ),
-                                this.imgr.equal(
-                                        this.fieldVariables[b.getA().getRow()+2][b.getA().getCol()+1],
-                                        this.imgr.makeNumber(4)
-                                )
-                        )
+                        this.bridgePresent(game, b, true)
                 );
             }
         }
-        // If node 0 and destination node don't form an adjacent bridge and thus not reachable in 1 step
+        // If root and destination node don't form an adjacent bridge and thus not reachable in 1 step
         return this.bmgr.not(
                 this.connectionVariables[dest][1]
         );
     }
 
     // Set a γ variable equivalent to a shorter connection or express in neighbors perspective
-    private BooleanFormula areNodesConnectedInISteps(int dest, int i, Game game) { // dest is located at [row+1][col+1] in fieldvariables, so all fieldVariables +1
+    private BooleanFormula areNodesConnectedInISteps(int dest, int i, Game game) {
         ArrayList<Bridge> neighbors = game.getBridgesFrom(game.getNodes().get(dest)); // Retrieve bridges connected to destination
-        ArrayList<BooleanFormula> temp = new ArrayList<>(); // Temporary list of conjunctions (γ0,n3,i-1 /\ x*)
+        ArrayList<BooleanFormula> temp = new ArrayList<>(); // Temporary list of conjunctions (γr,n3,i-1 /\ x*)
         for (Bridge b : neighbors) { // for every neighboring node describe what reaching destination from there means
             int n3; // n3 will be the node we will try to reach destination node from in one step
             if (game.getNodes().get(dest).equals(b.getA())) { // East or south bridge
                 n3 = game.getNodes().indexOf(b.getB()); // n3 should not be destination (take the other bridge endpoint)
-                if (b.getDirection().equals(Bridge.Direction.HORIZONTAL)) { // East
-                    temp.add(
-                            this.bmgr.and(
-                                    this.connectionVariables[n3][i-1],
-                                    this.bmgr.or(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getA().getRow()+1][b.getA().getCol()+2],
-                                                    this.imgr.makeNumber(1)
-                                            ),
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getA().getRow()+1][b.getA().getCol()+2],
-                                                    this.imgr.makeNumber(2)
-                                            )
-                                    )
-                            )
-                    );
-                } else if (b.getDirection().equals(Bridge.Direction.VERTICAL)) { // South
-                    temp.add(
-                            this.bmgr.and(
-                                    this.connectionVariables[n3][i-1],
-                                    this.bmgr.or(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getA().getRow()+2][b.getA().getCol()+1],
-                                                    this.imgr.makeNumber(3)
-                                            ),
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getA().getRow()+2][b.getA().getCol()+1],
-                                                    this.imgr.makeNumber(4)
-                                            )
-                                    )
-                            )
-                    );
-                }
+                temp.add(
+                        this.bmgr.and(
+                                this.connectionVariables[n3][i-1],
+                                this.bridgePresent(game, b, true)
+                        )
+                );
             } else if (game.getNodes().get(dest).equals(b.getB())) { // West or north bridge
                 n3 = game.getNodes().indexOf(b.getA()); // n3 should not be destination (take the other bridge endpoint)
-                if (b.getDirection().equals(Bridge.Direction.HORIZONTAL)) { // West
-                    temp.add(
-                            this.bmgr.and(
-                                    this.connectionVariables[n3][i-1],
-                                    this.bmgr.or(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getB().getRow()+1][b.getB().getCol()],
-                                                    this.imgr.makeNumber(1)
-                                            ),
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getB().getRow()+1][b.getB().getCol()],
-                                                    this.imgr.makeNumber(2)
-                                            )
-                                    )
-                            )
-                    );
-                } else if (b.getDirection().equals(Bridge.Direction.VERTICAL)) { // North
-                    temp.add(
-                            this.bmgr.and(
-                                    this.connectionVariables[n3][i-1],
-                                    this.bmgr.or(
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getB().getRow()][b.getB().getCol()+1],
-                                                    this.imgr.makeNumber(3)
-                                            ),
-                                            this.imgr.equal(
-                                                    this.fieldVariables[b.getB().getRow()][b.getB().getCol()+1],
-                                                    this.imgr.makeNumber(4)
-                                            )
-                                    )
-                            )
-                    );
-                }
+                temp.add(
+                        this.bmgr.and(
+                                this.connectionVariables[n3][i-1],
+                                this.bridgePresent(game, b, false)
+                        )
+                );
             }
         }
         BooleanFormula neighborDisjunction = this.bmgr.or(temp); // at least one case should be true
@@ -542,15 +943,15 @@ public class GridSolver {
     }
 
     private void printConnectionVariables(Game game, Model model) {
-        boolean[][] solution2 = new boolean[game.getNodes().size()][game.getNodes().size()];
+        boolean[][] solution2 = new boolean[game.getNodes().size()][this.depth+1];
         for (int n = 0; n < (game.getNodes().size()); n++) {
-            for (int i = 1; i < (game.getNodes().size()); i++) {
+            for (int i = 1; i <= this.depth; i++) {
                 solution2[n][i] = model.evaluate(this.connectionVariables[n][i]);
             }
         }
 
         for (int n = 0; n < (game.getNodes().size()); n++) {
-            for (int i = 1; i < (game.getNodes().size()); i++) {
+            for (int i = 1; i <= this.depth; i++) {
                 System.out.println(this.connectionVariables[n][i] + ": " + solution2[n][i]);
             }
         }
@@ -13,6 +13,8 @@ public class Main {
 //        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
 //
 //        Generator generator = new Generator();
+////        generator.setSpeculation(Runtime.getRuntime().availableProcessors()); // Check several candidate nodes at the same time
+////        generator.setBatchSize(8); // Check uniqueness once per 8 nodes, bisecting the batch if it fails
 //        int i = 0;
 //        while (i < 101) {
 //            ArrayList<ArrayList<Long>> data = generator.generateGames(Integer.parseInt(args[0]), Integer.parseInt(args[1]), args[2]);
@@ -83,28 +85,79 @@ public class Main {
 //            times = gridSolver.solveGame(b);
 //            writer.write("Grid:\t" + times.get(0) + "\t" + times.get(1) + "\t" + times.get(2) + "\t" + times.get(3) + "\n");
 //
+//            writer.write("Valid solution:\t" + a.isValidSolution() + "\n");
 //            writer.write("Equal solution:\t" + a.toString().equals(b.toString()) + "\n");
 //        }
 //        writer.close();
 
 
+//        // Cache the formulas, later runs replay them instead of building the constraints (or feed the .smt2 files to other solvers)
+//        FormulaStore formulaStore = new FormulaStore("formulas");
+//        graphSolver.setFormulaStore(formulaStore);
+//        gridSolver.setFormulaStore(formulaStore);
+
+
+//        // Print constraint sizes and build times per puzzle
+//        graphSolver.setInstrumentation(true);
+//        gridSolver.setInstrumentation(true);
+//        gridSolver.setSegmentEncoding(true); // Compare with one variable per possible bridge instead of per cell
+//        for (String s : puzzles) {
+//            graphSolver.solveGame(new Game(s));
+//            System.out.println(graphSolver.getLastReport());
+//            gridSolver.solveGame(new Game(s));
+//            System.out.println(gridSolver.getLastReport());
+//        }
+
+
+//        // Solve with only the encoding predicted to be faster, trained on a timing file written by the block above
+//        EncodingRouter router = new EncodingRouter();
+//        router.train(args[0]);
+//        for (String s : puzzles) {
+//            Game a = new Game(s);
+//            ArrayList<Long> routedTimes = router.solveGame(a);
+//            System.out.println(router.getLastEncoding() + ": " + routedTimes);
+//        }
+
+
+//        // Solve with solvers from a pool, so every puzzle after the first reuses a warm context of its size class
+//        SolverPool pool = new SolverPool(2);
+//        for (String s : puzzles) {
+//            Game a = new Game(s);
+//            GraphSolver pooled = pool.acquireGraphSolver(a);
+//            System.out.println(pooled.solveGame(a));
+//            pool.release(pooled, a);
+//        }
+
+
         // Only print solutions
         ArrayList<Long> times;
         for (String s : puzzles) {
             System.out.println("Trying to solve puzzle with graph encoding...");
             Game a = new Game(s);
             times = graphSolver.solveGame(a);
-            System.out.println(a);
+            if (graphSolver.getLastResult() == SolveResult.UNSOLVABLE)
+                System.out.println("Unsolvable, conflicting islands (row, col, value):\n" + graphSolver.explainUnsolvable(a, true)
+                        + "\nconflicting constraints: " + graphSolver.getLastConflictingConstraints());
+            else System.out.println(a + "Valid solution: " + a.isValidSolution());
             System.out.println(times);
 
             System.out.println("Trying to solve puzzle with grid encoding...");
             Game b = new Game(s);
             times = gridSolver.solveGame(b);
-            System.out.println(b);
+            if (gridSolver.getLastResult() == SolveResult.UNSOLVABLE)
+                System.out.println("Unsolvable");
+            else System.out.println(b);
             System.out.println(times);
         }
 
 
 //        Sudoku.solve(args);
+
+        // Solve a file of Sudokus, one per line, on one set of rules
+//        Sudoku sudoku = new Sudoku(3);
+//        ArrayList<int[]> sudokuSolutions = new ArrayList<>();
+//        ArrayList<Long> sudokuTimes = sudoku.solveFile("sudokus.txt", sudokuSolutions);
+//        System.out.println(sudokuTimes.stream().mapToLong(Long::longValue).sum() + "ms for " + sudokuTimes.size() + " Sudokus");
+//        sudoku.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One player working on one puzzle. The puzzle is encoded once by a GraphSolver of its own, after which every move is answered
+// by a check under assumptions. Verdicts are cached per board state, so undoing and redoing moves costs nothing
+// Bridges are referred to by their index in the puzzle's list of possible bridges, a null weight means not placed
+public class PlaySession {
+    private static final int MAX_CACHED_VERDICTS = 4096;
+
+    private final GraphSolver solver;
+    private final Game board;
+    private final LinkedHashMap<String, Boolean> verdicts;
+    private final int[] placedSums; // Sum of the placed weights per node, to reject moves that overshoot a value without the solver
+    private boolean completable;
+
+    public PlaySession(String id) throws InvalidConfigurationException {
+        this.board = new Game(id);
+        for (Bridge b : this.board.getBridges()) {
+            b.setWeight(null);
+        }
+        this.solver = new GraphSolver();
+        this.solver.loadGame(this.board);
+        this.verdicts = new LinkedHashMap<>(16, 0.75f, true) { // Least recently used verdicts are dropped first
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return this.size() > MAX_CACHED_VERDICTS;
+            }
+        };
+        this.placedSums = new int[this.board.getNodes().size()];
+        this.completable = this.check();
+    }
+
+    public Game getBoard() {
+        return this.board;
+    }
+
+    // Whether the current board can still be completed to a solution
+    public boolean isCompletable() {
+        return this.completable;
+    }
+
+    // Places a bridge with the given weight (0 marks it as not built), replacing an earlier weight, and returns isCompletable()
+    public boolean place(int bridge, int weight) {
+        if (weight < 0 || weight > 2)
+            throw new RuntimeException("Bridge weight should be 0, 1 or 2");
+        Bridge b = this.board.getBridges().get(bridge);
+        this.updateSums(b, -this.weightOf(b));
+        b.setWeight(BigInteger.valueOf(weight));
+        this.updateSums(b, weight);
+        this.completable = this.check();
+        return this.completable;
+    }
+
+    // Takes a bridge back and returns isCompletable(). Fewer placed bridges leave at least the same completions open
+    public boolean remove(int bridge) {
+        Bridge b = this.board.getBridges().get(bridge);
+        if (b.getWeight() == null)
+            return this.completable;
+        this.updateSums(b, -this.weightOf(b));
+        b.setWeight(null);
+        if (!this.completable)
+            this.completable = this.check();
+        return this.completable;
+    }
+
+    // A bridge whose weight is forced by the current board, see GraphSolver.getHint
+    public Bridge getHint() {
+        return this.completable ? this.solver.getHint(this.board) : null;
+    }
+
+    // Closes the session's solver with its prover and context, the session cannot be used afterwards
+    public void close() {
+        this.solver.close();
+    }
+
+    private boolean check() {
+        for (int n = 0; n < this.placedSums.length; n++) {
+            if (this.placedSums[n] > this.board.getNodes().get(n).getValue())
+                return false; // Overshoots a node value, no solver needed
+        }
+        String state = this.state();
+        Boolean verdict = this.verdicts.get(state);
+        if (verdict == null) {
+            verdict = this.solver.isCompletable(this.board);
+            this.verdicts.put(state, verdict);
+        }
+        return verdict;
+    }
+
+    // One character per bridge: its weight, or '.' if it is not placed
+    private String state() {
+        char[] state = new char[this.board.getBridges().size()];
+        for (int i = 0; i < state.length; i++) {
+            BigInteger weight = this.board.getBridges().get(i).getWeight();
+            state[i] = weight == null ? '.' : (char) ('0' + weight.intValue());
+        }
+        return new String(state);
+    }
+
+    private int weightOf(Bridge b) {
+        return b.getWeight() == null ? 0 : b.getWeight().intValue();
+    }
+
+    private void updateSums(Bridge b, int delta) {
+        this.placedSums[this.board.getNodeIndexAt(b.getA().getRow(), b.getA().getCol())] += delta;
+        this.placedSums[this.board.getNodeIndexAt(b.getB().getRow(), b.getB().getCol())] += delta;
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+// Compact binary form of puzzle IDs, for storing and sending large numbers of puzzles. One puzzle is
+//      varint fieldSize, varint islands, a varint gap per island, the island values packed in 3 bits each (value-1)
+// The gap of an island is the number of empty cells before it, counted from the previous island in row-major order, which is
+// the same number the letters of the text ID stand for. Varints use 7 bits per byte, low bits first, the high bit is set on all
+// bytes but the last. Values run from 1 to 8 with a maximum bridge size of 2, so 3 bits are enough
+// Puzzles are written one after another without separators, so a corpus is decoded by reading until the buffer is empty
+public class PuzzleCodec {
+
+    // Appends a puzzle given by its text ID to the buffer. Assumes a valid ID, the same way Game does
+    public static void encode(String id, ByteBuffer out) {
+        int colon = id.indexOf(':');
+        int size = Integer.parseInt(id.substring(0, id.indexOf('x')));
+        if (!id.substring(0, colon).equals(size + "x" + size + "m2"))
+            throw new RuntimeException("Only square puzzles with a maximum bridge size of 2 can be encoded");
+
+        int islands = 0;
+        for (int i = colon + 1; i < id.length(); i++) {
+            if (Character.isDigit(id.charAt(i)))
+                islands++;
+        }
+        putVarint(out, size);
+        putVarint(out, islands);
+
+        int gap = 0;
+        for (int i = colon + 1; i < id.length(); i++) { // Gaps first
+            char c = id.charAt(i);
+            if (Character.isAlphabetic(c))
+                gap += c - 96;
+            else {
+                putVarint(out, gap);
+                gap = 0;
+            }
+        }
+        int bits = 0; // Then the values, packed into bytes from the low bits up
+        int count = 0;
+        for (int i = colon + 1; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (Character.isDigit(c)) {
+                bits |= valueBits(c - '0') << count;
+                count += 3;
+                if (count >= 8) {
+                    out.put((byte) bits);
+                    bits >>>= 8;
+                    count -= 8;
+                }
+            }
+        }
+        if (count > 0)
+            out.put((byte) bits);
+    }
+
+    // Appends a game's islands to the buffer, its bridges are not stored. The nodes have to be sorted, as after sortNodes()
+    public static void encode(Game game, ByteBuffer out) {
+        int size = game.getFieldSize();
+        putVarint(out, size);
+        putVarint(out, game.getNodes().size());
+        int previous = -1;
+        for (Node n : game.getNodes()) {
+            int position = n.getRow() * size + n.getCol();
+            if (position <= previous)
+                throw new RuntimeException("Nodes should be sorted from left to right and top to bottom");
+            putVarint(out, position - previous - 1);
+            previous = position;
+        }
+        int bits = 0;
+        int count = 0;
+        for (Node n : game.getNodes()) {
+            bits |= valueBits(n.getValue()) << count;
+            count += 3;
+            if (count >= 8) {
+                out.put((byte) bits);
+                bits >>>= 8;
+                count -= 8;
+            }
+        }
+        if (count > 0)
+            out.put((byte) bits);
+    }
+
+    // Reads the next puzzle as a game with all possible bridges, like new Game(id) but without building the text ID
+    public static Game decodeGame(ByteBuffer in) {
+        int size = getVarint(in);
+        int islands = getVarint(in);
+        int[] positions = new int[islands];
+        int position = -1;
+        for (int i = 0; i < islands; i++) {
+            position += getVarint(in) + 1;
+            positions[i] = position;
+        }
+
+        ArrayList<Node> nodes = new ArrayList<>(islands);
+        int bits = 0;
+        int count = 0;
+        for (int i = 0; i < islands; i++) {
+            if (count < 3) {
+                bits |= (in.get() & 0xFF) << count;
+                count += 8;
+            }
+            nodes.add(new Node(positions[i] / size, positions[i] % size, (bits & 7) + 1));
+            bits >>>= 3;
+            count -= 3;
+        }
+
+        Game game = new Game(size, nodes, new ArrayList<>());
+        game.setPossibleBridges(); // Same as the text ID constructor
+        game.setNullBridgesToZero();
+        return game;
+    }
+
+    // Reads the next puzzle back into its text ID, with empty cells written the way the Generator writes them
+    public static String decode(ByteBuffer in) {
+        int size = getVarint(in);
+        int islands = getVarint(in);
+        int[] gaps = new int[islands];
+        for (int i = 0; i < islands; i++) {
+            gaps[i] = getVarint(in);
+        }
+
+        StringBuilder s = new StringBuilder();
+        s.append(size).append("x").append(size).append("m2:");
+        int bits = 0;
+        int count = 0;
+        int cells = 0; // Cells written so far
+        for (int i = 0; i < islands; i++) {
+            if (count < 3) {
+                bits |= (in.get() & 0xFF) << count;
+                count += 8;
+            }
+            appendGap(s, gaps[i]);
+            s.append((char) ('0' + (bits & 7) + 1));
+            bits >>>= 3;
+            count -= 3;
+            cells += gaps[i] + 1;
+        }
+        appendGap(s, size * size - cells);
+        return s.toString();
+    }
+
+    // Encodes all puzzles into one buffer, ready to be read (flipped)
+    public static ByteBuffer encodeAll(List<String> ids) {
+        int capacity = 0;
+        for (String id : ids) { // Never less than needed: an island takes at most its letters and digit plus one byte
+            capacity += 10 + 2 * id.length();
+        }
+        ByteBuffer out = ByteBuffer.allocate(capacity);
+        for (String id : ids) {
+            encode(id, out);
+        }
+        return out.flip();
+    }
+
+    // Decodes every puzzle left in the buffer
+    public static ArrayList<Game> decodeAll(ByteBuffer in) {
+        ArrayList<Game> games = new ArrayList<>();
+        while (in.hasRemaining()) {
+            games.add(decodeGame(in));
+        }
+        return games;
+    }
+
+    // Converts a text file with one puzzle ID per line (other lines are skipped) into a binary corpus file
+    public static void convertFile(String textFile, String binaryFile) {
+        ArrayList<String> ids = new ArrayList<>();
+        try {
+            Scanner scanner = new Scanner(new File(textFile));
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (line.contains("m2:"))
+                    ids.add(line);
+            }
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        ByteBuffer encoded = encodeAll(ids);
+        try {
+            Files.write(Path.of(binaryFile), Arrays.copyOf(encoded.array(), encoded.limit()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static ArrayList<Game> readFile(String binaryFile) {
+        try {
+            return decodeAll(ByteBuffer.wrap(Files.readAllBytes(Path.of(binaryFile))));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int valueBits(int value) {
+        if (value < 1 || value > 8)
+            throw new RuntimeException("Island values should be between 1 and 8");
+        return value - 1;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // Letters for a run of empty cells, 'z' for 26 at a time
+    private static void appendGap(StringBuilder s, int gap) {
+        while (gap >= 26) {
+            s.append('z');
+            gap -= 26;
+        }
+        if (gap > 0)
+            s.append((char) (gap + 96));
+    }
+}
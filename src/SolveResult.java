@@ -0,0 +1,6 @@
+// Outcome of the last solveGame call of a solver
+public enum SolveResult {
+    SOLVED,
+    UNSOLVABLE,
+    TIMEOUT // Ran out of time or was cancelled before an answer was found
+}
@@ -0,0 +1,196 @@
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Solves requests on a fixed number of platform threads, behind a bounded queue. A request that does not fit in the queue fails
+// with a RejectedExecutionException right away
+// A thread takes the oldest request together with up to batchSize-1 more queued requests of the same encoding (but no more than
+// its share of the queue), and solves them one after another on one warm solver, each under its own deadline. Parsing the puzzle, building the constraints and rendering
+// the solution run on all threads at the same time, only the prover section of a solver (see GraphSolver.setProverPermits) needs
+// one of the permits. Solvers come from a SolverPool, one per thread at most
+public class SolveScheduler implements AutoCloseable {
+    private static final int BATCH_SIZE = 16;
+
+    private final ArrayBlockingQueue<Task> queue;
+    private final ArrayList<Thread> threads;
+    private final Semaphore permits;
+    private final SolverPool pool;
+    private volatile int batchSize = BATCH_SIZE;
+    private volatile boolean closed = false;
+
+    // Result of one request, grid is the rendered solution or null if there is none
+    public static class Outcome {
+        public final String id;
+        public final SolveResult result;
+        public final String grid;
+        public final ArrayList<Long> times;
+
+        Outcome(String id, SolveResult result, String grid, ArrayList<Long> times) {
+            this.id = id;
+            this.result = result;
+            this.grid = grid;
+            this.times = times;
+        }
+    }
+
+    private static class Task {
+        final String id;
+        final String encoding;
+        final long deadline;
+        final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+
+        Task(String id, String encoding, long deadline) {
+            this.id = id;
+            this.encoding = encoding;
+            this.deadline = deadline;
+        }
+    }
+
+    // More threads than permits let some requests build their constraints while others use their provers
+    public SolveScheduler(int threads, int queueCapacity, int permits) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.permits = new Semaphore(permits, true); // Fair, so requests get a prover in arrival order
+        this.pool = new SolverPool(threads);
+        this.threads = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::work, "solve-scheduler-" + i);
+            t.setDaemon(true);
+            this.threads.add(t);
+            t.start();
+        }
+    }
+
+    // Most requests a thread takes at once, 1 solves every request on its own
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public CompletableFuture<Outcome> submit(String id, String encoding) {
+        return this.submit(id, encoding, Long.MAX_VALUE);
+    }
+
+    // Deadline is the System.nanoTime() after which the request has timed out, Long.MAX_VALUE for none. A request that is
+    // still queued at its deadline is not solved at all
+    public CompletableFuture<Outcome> submit(String id, String encoding, long deadline) {
+        if (!encoding.equals("graph") && !encoding.equals("grid"))
+            throw new RuntimeException("Unknown encoding " + encoding);
+        Task task = new Task(id, encoding, deadline);
+        if (this.closed || !this.queue.offer(task))
+            task.outcome.completeExceptionally(new RejectedExecutionException("Queue is full"));
+        return task.outcome;
+    }
+
+    // Thread loop, ends when the scheduler is closed
+    private void work() {
+        ArrayList<Task> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.clear();
+                Task first = this.queue.take();
+                batch.add(first);
+                int limit = Math.min(this.batchSize, 1 + this.queue.size() / this.threads.size()); // Leaves a share for the other threads
+                for (Task next : this.queue) { // Weakly consistent, remove fails for a request another thread took first
+                    if (batch.size() >= limit)
+                        break;
+                    if (next.encoding.equals(first.encoding) && this.queue.remove(next))
+                        batch.add(next);
+                }
+                this.solveBatch(batch);
+            }
+        } catch (InterruptedException ignored) { // Closed
+        }
+    }
+
+    // Solves the requests of one encoding back to back on the same solver
+    private void solveBatch(ArrayList<Task> batch) {
+        GraphSolver graphSolver = null;
+        GridSolver gridSolver = null;
+        Game largest = null; // The solver goes back to the pool under the class of the largest game it solved
+        for (Task task : batch) {
+            if (this.timedOut(task))
+                continue;
+            Game game;
+            try {
+                game = new Game(task.id);
+            } catch (RuntimeException e) { // Invalid puzzle ID
+                task.outcome.completeExceptionally(e);
+                continue;
+            }
+
+            try {
+                ArrayList<Long> times;
+                SolveResult result;
+                if (task.encoding.equals("graph")) {
+                    if (graphSolver == null)
+                        graphSolver = this.pool.acquireGraphSolver(game);
+                    graphSolver.setProverPermits(this.permits);
+                    graphSolver.setTimeout(this.remainingMillis(task));
+                    times = graphSolver.solveGame(game);
+                    result = graphSolver.getLastResult();
+                } else {
+                    if (gridSolver == null)
+                        gridSolver = this.pool.acquireGridSolver(game);
+                    gridSolver.setProverPermits(this.permits);
+                    gridSolver.setTimeout(this.remainingMillis(task));
+                    times = gridSolver.solveGame(game);
+                    result = gridSolver.getLastResult();
+                }
+                if (largest == null || SolverPool.sizeClass(game) > SolverPool.sizeClass(largest))
+                    largest = game;
+                task.outcome.complete(new Outcome(task.id, result, result == SolveResult.SOLVED ? game.toString() : null, times));
+            } catch (InvalidConfigurationException e) {
+                task.outcome.completeExceptionally(new RuntimeException(e));
+            } catch (RuntimeException e) { // Solver failure, the solver is not returned to the pool in an unknown state
+                if (graphSolver != null)
+                    graphSolver.close();
+                if (gridSolver != null)
+                    gridSolver.close();
+                graphSolver = null;
+                gridSolver = null;
+                largest = null;
+                task.outcome.completeExceptionally(e);
+            }
+        }
+        if (graphSolver != null) // Has solved at least the game in largest
+            this.pool.release(graphSolver, largest);
+        if (gridSolver != null)
+            this.pool.release(gridSolver, largest);
+    }
+
+    // Completes a request that is past its deadline before it is solved
+    private boolean timedOut(Task task) {
+        if (task.deadline == Long.MAX_VALUE || System.nanoTime() < task.deadline)
+            return false;
+        task.outcome.complete(new Outcome(task.id, SolveResult.TIMEOUT, null, null));
+        return true;
+    }
+
+    // Time limit for the solver, 0 means none
+    private long remainingMillis(Task task) {
+        return task.deadline == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(task.deadline - System.nanoTime()));
+    }
+
+    // Stops the threads, fails the requests that are still queued and closes the idle solvers
+    public void close() {
+        this.closed = true;
+        for (Thread t : this.threads) {
+            t.interrupt();
+        }
+        for (Thread t : this.threads) {
+            try {
+                t.join(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Task task;
+        while ((task = this.queue.poll()) != null) {
+            task.outcome.completeExceptionally(new RejectedExecutionException("Scheduler closed"));
+        }
+        this.pool.close();
+    }
+}
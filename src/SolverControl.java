@@ -0,0 +1,139 @@
+import org.sosy_lab.common.ShutdownManager;
+import org.sosy_lab.common.ShutdownNotifier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Timeout, cancel and prover permits of the calls of one solver (GraphSolver or GridSolver). The solver creates every context
+// with newNotifier and replaces it once isShutDown, before it starts the next call with startCall. Every startCall is followed
+// by an endCall, also when the call fails
+public class SolverControl {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "solver-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile ShutdownManager shutdown; // Replaced together with the context after a shutdown
+    private final Object callLock = new Object(); // Guards the fields below, cancel and the timer come from other threads
+    private boolean running = false; // Between startCall and endCall
+    private boolean cancelPending = false; // Cancelled while no call was running, the next call stops right away
+    private long calls = 0; // Calls started so far, so a late timer does not hit a later call
+    private ScheduledFuture<?> timer;
+    private long timeoutMillis = 0; // 0 means no time limit
+    private Semaphore proverPermits;
+    private Thread waiting; // Blocked in acquireProverPermit, interrupted by a shutdown
+
+    // Shutdown notifier for a new context, every earlier shutdown is forgotten
+    public ShutdownNotifier newNotifier() {
+        this.shutdown = ShutdownManager.create();
+        this.shutdown.getNotifier().register(reason -> this.interruptWaiting());
+        return this.shutdown.getNotifier();
+    }
+
+    // The context cannot be used anymore after a timeout or cancel
+    public boolean isShutDown() {
+        return this.shutdown.getNotifier().shouldShutdown();
+    }
+
+    // Building constraints does not check for a shutdown by itself, throws an InterruptedException after a timeout or cancel
+    public void shutdownIfNecessary() throws InterruptedException {
+        this.shutdown.getNotifier().shutdownIfNecessary();
+    }
+
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Stops the call that is running at the moment, from another thread. It ends the same way as when it runs out of time
+    // Without a running call, the next call is stopped as soon as it starts, so a cancel just before a call is not lost
+    public void cancel() {
+        synchronized (this.callLock) {
+            if (this.running)
+                this.shutdown.requestShutdown("Cancelled");
+            else this.cancelPending = true;
+        }
+    }
+
+    // Drops a cancel that is still waiting for the next call, for a caller whose call never started after all
+    public void withdrawCancel() {
+        synchronized (this.callLock) {
+            this.cancelPending = false;
+        }
+    }
+
+    // Null means no limit at all
+    public void setProverPermits(Semaphore proverPermits) {
+        this.proverPermits = proverPermits;
+    }
+
+    // Blocks until a prover permit is free. A timeout or cancel interrupts the wait, which then throws an InterruptedException
+    public void acquireProverPermit() throws InterruptedException {
+        if (this.proverPermits == null)
+            return;
+        synchronized (this.callLock) {
+            this.shutdownIfNecessary(); // A shutdown from before the wait would not interrupt it
+            this.waiting = Thread.currentThread();
+        }
+        try {
+            this.proverPermits.acquire();
+        } finally {
+            synchronized (this.callLock) {
+                this.waiting = null;
+                if (this.isShutDown())
+                    Thread.interrupted(); // The interrupt may have come in just after the permit, it must not hit the next wait
+            }
+        }
+        if (this.isShutDown()) {
+            this.proverPermits.release();
+            this.shutdownIfNecessary();
+        }
+    }
+
+    public void releaseProverPermit() {
+        if (this.proverPermits != null)
+            this.proverPermits.release();
+    }
+
+    // Applies a pending cancel and schedules the shutdown at the deadline, on the context the solver has just prepared
+    public void startCall() {
+        synchronized (this.callLock) {
+            this.running = true;
+            this.calls++;
+            if (this.cancelPending) {
+                this.cancelPending = false;
+                this.shutdown.requestShutdown("Cancelled");
+            }
+            if (this.timeoutMillis > 0) {
+                long call = this.calls;
+                this.timer = TIMER.schedule(() -> this.timeout(call), this.timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public void endCall() {
+        synchronized (this.callLock) {
+            if (this.timer != null)
+                this.timer.cancel(false);
+            this.timer = null;
+            this.running = false;
+        }
+    }
+
+    // Called by the shutdown manager, on the thread that requested the shutdown
+    private void interruptWaiting() {
+        synchronized (this.callLock) {
+            if (this.waiting != null)
+                this.waiting.interrupt();
+        }
+    }
+
+    private void timeout(long call) {
+        synchronized (this.callLock) {
+            if (this.running && this.calls == call)
+                this.shutdown.requestShutdown("Timeout");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import org.sosy_lab.common.configuration.InvalidConfigurationException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// Keeps solvers that finished a puzzle, so the next puzzle of a similar size reuses their context, prover, variables and atoms
+// Solvers are grouped by size class: the number of possible bridges or nodes (whichever is larger) rounded up to a power of two
+// A solver from the same or a larger class has already declared all variables the puzzle needs
+// Options set on a solver (instrumentation, bounded connectivity, segment encoding) stay set when it is returned
+// Solvers the pool does not keep are closed, so their contexts are not left behind
+public class SolverPool {
+    private static final int MAX_SIZE_CLASSES = 8; // Per solver type, the smallest class is dropped first as larger ones can serve its games
+    private final int maxIdlePerClass;
+    private final TreeMap<Integer, ArrayDeque<GraphSolver>> idleGraphSolvers;
+    private final TreeMap<Integer, ArrayDeque<GridSolver>> idleGridSolvers;
+
+    public SolverPool(int maxIdlePerClass) {
+        this.maxIdlePerClass = maxIdlePerClass;
+        this.idleGraphSolvers = new TreeMap<>();
+        this.idleGridSolvers = new TreeMap<>();
+    }
+
+    public static int sizeClass(Game game) {
+        int size = Math.max(game.getBridges().size(), game.getNodes().size());
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    // Returns an idle solver of the smallest class that fits the game, or a new one if there is none
+    public GraphSolver acquireGraphSolver(Game game) throws InvalidConfigurationException {
+        GraphSolver solver = take(this.idleGraphSolvers, sizeClass(game));
+        return solver != null ? solver : new GraphSolver();
+    }
+
+    public GridSolver acquireGridSolver(Game game) throws InvalidConfigurationException {
+        GridSolver solver = take(this.idleGridSolvers, sizeClass(game));
+        return solver != null ? solver : new GridSolver();
+    }
+
+    // Returns a solver to the pool under the class of the (largest) game it solved, solvers beyond the limit are closed
+    public void release(GraphSolver solver, Game game) {
+        put(this.idleGraphSolvers, sizeClass(game), solver, GraphSolver::close);
+    }
+
+    public void release(GridSolver solver, Game game) {
+        put(this.idleGridSolvers, sizeClass(game), solver, GridSolver::close);
+    }
+
+    // Closes every idle solver
+    public synchronized void close() {
+        for (ArrayDeque<GraphSolver> solvers : this.idleGraphSolvers.values()) {
+            solvers.forEach(GraphSolver::close);
+        }
+        for (ArrayDeque<GridSolver> solvers : this.idleGridSolvers.values()) {
+            solvers.forEach(GridSolver::close);
+        }
+        this.idleGraphSolvers.clear();
+        this.idleGridSolvers.clear();
+    }
+
+    // Creates solvers for the class of the sample game and solves it once with each, so the first real puzzles find warm solvers
+    public void prewarm(Game sample, int solvers) throws InvalidConfigurationException {
+        for (int i = 0; i < solvers; i++) {
+            GraphSolver graphSolver = new GraphSolver();
+            graphSolver.solveGame(new Game(sample));
+            this.release(graphSolver, sample);
+
+            GridSolver gridSolver = new GridSolver();
+            gridSolver.solveGame(new Game(sample));
+            this.release(gridSolver, sample);
+        }
+    }
+
+    private synchronized <T> T take(TreeMap<Integer, ArrayDeque<T>> idle, int sizeClass) {
+        for (Map.Entry<Integer, ArrayDeque<T>> entry : idle.tailMap(sizeClass, true).entrySet()) {
+            T solver = entry.getValue().pollFirst();
+            if (solver != null)
+                return solver;
+        }
+        return null;
+    }
+
+    private synchronized <T> void put(TreeMap<Integer, ArrayDeque<T>> idle, int sizeClass, T solver, Consumer<T> close) {
+        if (!idle.containsKey(sizeClass) && idle.size() >= MAX_SIZE_CLASSES) {
+            if (sizeClass < idle.firstKey()) {
+                close.accept(solver);
+                return;
+            }
+            idle.pollFirstEntry().getValue().forEach(close);
+        }
+        ArrayDeque<T> solvers = idle.computeIfAbsent(sizeClass, c -> new ArrayDeque<>());
+        if (solvers.size() < this.maxIdlePerClass)
+            solvers.addFirst(solver); // Most recently used first, its caches are the warmest
+        else
+            close.accept(solver);
+    }
+}
@@ -0,0 +1,173 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Local HTTP service that solves puzzles through a SolveScheduler, with as many prover permits as workers
+//      POST /solve?encoding=graph|grid     Body is a puzzle ID ("NxNm2:..."), the answer is JSON with the solved grid and times
+// Requests wait in the bounded queue of the scheduler (full queue: 503). A scheduler thread takes a batch of queued requests of
+// one encoding and solves them back to back on a warm solver, see SolveScheduler.
+// HTTP handlers only read the request and hand it over, they never wait for a solver. A request that is not done within the
+// timeout after arriving answers TIMEOUT, and one that got no answer from the scheduler even after a grace period answers 500
+public class SolverServer {
+    private static final long GRACE_MILLIS = 2000; // Time past the deadline for the solver to notice it, before the request is given up on
+
+    private final HttpServer server;
+    private final SolveScheduler scheduler;
+    private final ThreadPoolExecutor handlers;
+    private final long timeoutMillis;
+
+    public SolverServer(int port, int workers, int queueCapacity, long timeoutMillis) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        this.scheduler = new SolveScheduler(2 * workers, queueCapacity, workers);
+
+        // Handlers are short, so with all of them busy and their queue full the accepting thread handles a request itself
+        this.handlers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("solve-handler-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext("/solve", this::handle);
+        this.server.setExecutor(this.handlers);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        long timeoutMillis = args.length > 3 ? Long.parseLong(args[3]) : 10000;
+        SolverServer server = new SolverServer(port, workers, queueCapacity, timeoutMillis);
+        if (args.length > 4)
+            server.setBatchSize(Integer.parseInt(args[4]));
+        server.start();
+        System.out.println("Listening on http://localhost:" + port + "/solve");
+    }
+
+    // Most requests a scheduler thread solves in a row, 1 turns batching off
+    public void setBatchSize(int batchSize) {
+        this.scheduler.setBatchSize(batchSize);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.handlers.shutdownNow();
+        this.scheduler.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis); // Counts from arrival
+        if (!exchange.getRequestMethod().equals("POST")) {
+            this.respond(exchange, 405, "{\"error\":\"Use POST\"}");
+            return;
+        }
+        String encoding = "graph";
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("encoding="))
+                    encoding = URLDecoder.decode(parameter.substring("encoding=".length()), StandardCharsets.UTF_8);
+            }
+        }
+        if (!encoding.equals("graph") && !encoding.equals("grid")) {
+            this.respond(exchange, 400, "{\"error\":\"Unknown encoding\"}");
+            return;
+        }
+        String id;
+        try {
+            id = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            exchange.close();
+            throw e;
+        }
+
+        // Answered by whoever completes the outcome first: the scheduler, the rejection of a full queue, or the time limit
+        String requestEncoding = encoding;
+        this.scheduler.submit(id, encoding, deadline).orTimeout(this.timeoutMillis + GRACE_MILLIS, TimeUnit.MILLISECONDS).whenComplete((outcome, e) -> {
+            try {
+                if (e == null)
+                    this.respond(exchange, 200, this.json(outcome, requestEncoding));
+                else if (e instanceof RejectedExecutionException)
+                    this.respond(exchange, 503, "{\"error\":\"Queue is full\"}");
+                else if (e instanceof TimeoutException)
+                    this.respond(exchange, 500, "{\"error\":\"No answer from the scheduler\"}");
+                else // Invalid puzzle ID or solver failure
+                    this.respond(exchange, 200, "{\"id\":" + quote(id) + ",\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+            } catch (IOException ignored) { // Client is gone
+            }
+        });
+    }
+
+    // Sends the answer and closes the exchange
+    private void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String json(SolveScheduler.Outcome outcome, String encoding) {
+        ArrayList<Long> times = outcome.times;
+        StringBuilder s = new StringBuilder();
+        s.append("{\"id\":").append(quote(outcome.id));
+        s.append(",\"encoding\":").append(quote(encoding));
+        s.append(",\"status\":").append(quote(outcome.result.toString()));
+        if (outcome.grid != null) {
+            s.append(",\"grid\":[");
+            String[] rows = outcome.grid.split("\n");
+            for (int i = 0; i < rows.length; i++) {
+                s.append(i == 0 ? "" : ",").append(quote(rows[i]));
+            }
+            s.append("]");
+        }
+        if (times != null) { // {constr, unsat, sat, total} or {constr, unsat, total} if there is no solution
+            s.append(",\"times\":{\"construct\":").append(times.get(0));
+            s.append(",\"check\":").append(times.get(1));
+            if (times.size() == 4)
+                s.append(",\"model\":").append(times.get(2));
+            s.append(",\"total\":").append(times.get(times.size() - 1)).append("}");
+        }
+        return s.append("}").toString();
+    }
+
+    private static String quote(String text) {
+        StringBuilder s = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> s.append("\\\"");
+                case '\\' -> s.append("\\\\");
+                case '\n' -> s.append("\\n");
+                case '\r' -> s.append("\\r");
+                case '\t' -> s.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        s.append(String.format("\\u%04x", (int) c));
+                    else s.append(c);
+                }
+            }
+        }
+        return s.append("\"").toString();
+    }
+}